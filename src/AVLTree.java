@@ -1,7 +1,19 @@
 // Liron Cohen, lironcohen3, 207481268
 // Yuval Mor, yuvalmor, 209011543
 
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  *
@@ -14,6 +26,24 @@ import java.util.Stack;
 
 public class AVLTree {
 	private IAVLNode root;
+	private AVLNode minNode; // the node with the smallest key, null if the tree is empty or only hosts a split or set operation
+	private AVLNode maxNode; // the node with the largest key, null if the tree is empty or only hosts a split or set operation
+	private AVLNode lastTouched; // the node of the last insert or delete, null if unknown
+	private Finger finger = Finger.ROOT; // where searches start from
+	private Augmentation augmentation = null; // the subtree aggregate kept by the nodes, null if none
+	private boolean weak = false; // whether the tree is a weak AVL tree, see setWeak
+	private int poolCapacity = 0; // the most deleted nodes kept for reuse, see setNodePool
+	private AVLNode freeNodes; // the deleted nodes kept for reuse, chained by their parent pointers
+	private int freeCount = 0;
+	
+	// the single virtual leaf shared by all the nodes of all the trees, its fields are never changed
+	private static final AVLNode VIRTUAL_LEAF = new AVLTree().new AVLNode(-1, "");
+	
+	// subtrees with fewer keys than this are built sequentially by a parallel fromSorted
+	static final int PARALLEL_BUILD_THRESHOLD = 1 << 15;
+	
+	// subtrees with fewer nodes than this are exported sequentially by keysToArrayParallel and infoToArrayParallel
+	static final int PARALLEL_EXPORT_THRESHOLD = 1 << 15;
 
 	
   /**
@@ -25,6 +55,110 @@ public class AVLTree {
   public AVLTree() {
 	  this.root = null;
   }
+  
+  
+  /**
+   * public static AVLTree fromSorted(int[] keys, String[] infos)
+   *
+   * constructs a perfectly balanced AVLTree from keys sorted in increasing order,
+   * infos[i] is the info of keys[i]. Runs in O(n) without any rotation.
+   * precondition: keys are distinct, sorted and not -1, keys.length == infos.length
+   */
+  public static AVLTree fromSorted(int[] keys, String[] infos) {
+	  return fromSorted(keys, infos, false);
+  }
+  
+  
+  /**
+   * public static AVLTree fromSorted(int[] keys, String[] infos, boolean parallel)
+   *
+   * as fromSorted(keys, infos), if parallel is true large inputs are built
+   * on the common fork-join pool, each half of the tree by a different task.
+   */
+  public static AVLTree fromSorted(int[] keys, String[] infos, boolean parallel) {
+	  if (keys.length != infos.length)
+		  throw new IllegalArgumentException("keys and infos must have the same length");
+	  for (int i = 0; i < keys.length; i++) {
+		  if (keys[i] == -1 || (i > 0 && keys[i-1] >= keys[i]))
+			  throw new IllegalArgumentException("keys must be distinct, sorted and not -1");
+	  }
+	  
+	  AVLTree tree = new AVLTree();
+	  if (keys.length == 0)
+		  return tree;
+	  if (parallel && keys.length >= PARALLEL_BUILD_THRESHOLD)
+		  tree.root = ForkJoinPool.commonPool().invoke(tree.new BuildTask(keys, infos, 0, keys.length));
+	  else
+		  tree.root = tree.buildSorted(keys, infos, 0, keys.length);
+	  tree.resetCachedNodes();
+	  return tree;
+  }
+  
+  
+  /**
+   * private AVLNode buildSorted(int[] keys, String[] infos, int from, int to)
+   *
+   * builds a balanced subtree from keys[from..to) and returns its root,
+   * or the virtual leaf if the range is empty. The root's parent is not set.
+   */
+  private AVLNode buildSorted(int[] keys, String[] infos, int from, int to) {
+	  if (from == to)
+		  return VIRTUAL_LEAF;
+	  int mid = (from + to) >>> 1;
+	  return linkBuilt(keys[mid], infos[mid], buildSorted(keys, infos, from, mid), buildSorted(keys, infos, mid + 1, to));
+  }
+  
+  
+  /**
+   * private AVLNode linkBuilt(int key, String info, AVLNode left, AVLNode right)
+   *
+   * creates a node with the given children and sets its height and size from them.
+   */
+  private AVLNode linkBuilt(int key, String info, AVLNode left, AVLNode right) {
+	  AVLNode n = newNode(key, info);
+	  n.setLeft(left);
+	  left.setParent(n);
+	  n.setRight(right);
+	  right.setParent(n);
+	  n.setHeight(Math.max(left.getHeight(), right.getHeight()) + 1);
+	  n.setSize(left.getSize() + right.getSize() + 1);
+	  if (this.augmentation != null)
+		  updateAggregate(n);
+	  return n;
+  }
+  
+  
+  /**
+   * private class BuildTask
+   *
+   * builds a balanced subtree from keys[from..to) like buildSorted,
+   * forking the left half while the range is larger than PARALLEL_BUILD_THRESHOLD.
+   */
+  @SuppressWarnings("serial")
+  private class BuildTask extends RecursiveTask<AVLNode> {
+	  private final int[] keys;
+	  private final String[] infos;
+	  private final int from;
+	  private final int to;
+	  
+	  BuildTask(int[] keys, String[] infos, int from, int to) {
+		  this.keys = keys;
+		  this.infos = infos;
+		  this.from = from;
+		  this.to = to;
+	  }
+	  
+	  @Override
+	  protected AVLNode compute() {
+		  if (to - from < PARALLEL_BUILD_THRESHOLD)
+			  return buildSorted(keys, infos, from, to);
+		  int mid = (from + to) >>> 1;
+		  BuildTask left = new BuildTask(keys, infos, from, mid);
+		  left.fork();
+		  AVLNode right = new BuildTask(keys, infos, mid + 1, to).compute();
+		  return linkBuilt(keys[mid], infos[mid], left.join(), right);
+	  }
+  }
 	
 	
   /**
@@ -87,14 +221,8 @@ public class AVLTree {
    */
   public String min()
   {
-	  AVLNode node = (AVLNode)this.root;
-	   if (node == null)
-		   return null;
-		else {
-		   while (node.getLeft().getKey() != -1)  // stops on the virtual leaf's parent
-			   node = (AVLNode)node.getLeft();
-		   return node.getValue();
-		}
+	  AVLNode node = firstNode(); // kept by the tree
+	  return (node == null) ? null : node.getValue();
   }
 
   /**
@@ -105,14 +233,61 @@ public class AVLTree {
    */
   public String max()
   {
-	  AVLNode node = (AVLNode)this.root;
-	   if (node == null)
-		   return null;
-	   else {
-		   while (node.getRight().getKey() != -1)  // stops on the virtual leaf's parent
-			   node = (AVLNode)node.getRight();
-		   return node.getValue();
-	   }
+	  AVLNode node = lastNode(); // kept by the tree
+	  return (node == null) ? null : node.getValue();
+  }
+  
+  /**
+   * public String pollFirst()
+   *
+   * deletes the item with the smallest key in the tree and returns its info,
+   * or null if the tree is empty
+   */
+  public String pollFirst()
+  {
+	  AVLNode node = firstNode();
+	  if (node == null)
+		  return null;
+	  String info = node.getValue(); // read before the node is recycled
+	  deleteNode(node);
+	  recycle(node);
+	  return info;
+  }
+  
+  /**
+   * public String pollLast()
+   *
+   * deletes the item with the largest key in the tree and returns its info,
+   * or null if the tree is empty
+   */
+  public String pollLast()
+  {
+	  AVLNode node = lastNode();
+	  if (node == null)
+		  return null;
+	  String info = node.getValue(); // read before the node is recycled
+	  deleteNode(node);
+	  recycle(node);
+	  return info;
+  }
+  
+  /**
+   * private void resetCachedNodes()
+   *
+   * sets the minimum and maximum from the ends of the spines and forgets the last touched node,
+   * after the tree was rebuilt or joined from parts, in O(log n).
+   */
+  private void resetCachedNodes()
+  {
+	  AVLNode first = (AVLNode)this.root;
+	  AVLNode last = (AVLNode)this.root;
+	  while (first != null && first.getLeft().getKey() != -1)
+		  first = (AVLNode)first.getLeft();
+	  while (last != null && last.getRight().getKey() != -1)
+		  last = (AVLNode)last.getRight();
+	  this.minNode = first;
+	  this.maxNode = last;
+	  this.lastTouched = null;
   }
     
  /**
@@ -123,10 +298,14 @@ public class AVLTree {
    */
   public String search(int k)
   {
-	IAVLNode node = this.root;
-	if (node == null) {
+	if (this.root == null) {
 		return null;
 	}
+	if (this.finger != Finger.ROOT) { // starting from the finger
+		AVLNode node = treePosition(k);
+		return (node.getKey() == k) ? node.getValue() : null;
+	}
+	IAVLNode node = this.root;
 	while (node.getKey() != -1) {
 		if (k == node.getKey()) // if the key is found
 			return node.getValue(); 
@@ -138,26 +317,478 @@ public class AVLTree {
 	return null; // if key isn't in the tree
   }
   
+  /**
+   * public int rank(int k)
+   *
+   * returns the number of keys in the tree that are smaller than k,
+   * which is the index of k in keysToArray() if k is in the tree. Runs in O(log n).
+   */
+  public int rank(int k) {
+	  return countBelow(k, false);
+  }
+  
+  /**
+   * public int select(int i)
+   *
+   * returns the key with index i in keysToArray(), the i+1 smallest key in the tree,
+   * or -1 if i < 0 or i >= size(). Runs in O(log n).
+   */
+  public int select(int i) {
+	  if (i < 0 || i >= this.size())
+		  return -1;
+	  return selectNode(i).getKey();
+  }
+  
+  /**
+   * private AVLNode selectNode(int i)
+   *
+   * returns the node of the key with index i in keysToArray().
+   * precondition: 0 <= i < size()
+   */
+  private AVLNode selectNode(int i) {
+	  AVLNode x = (AVLNode)this.root;
+	  while (true) {
+		  int leftSize = ((AVLNode)x.getLeft()).getSize();
+		  if (i == leftSize)
+			  return x;
+		  else if (i < leftSize)
+			  x = (AVLNode)x.getLeft();
+		  else {
+			  i -= leftSize + 1; // skipping the left subtree and x
+			  x = (AVLNode)x.getRight();
+		  }
+	  }
+  }
+  
+  /**
+   * public int countRange(int from, int to)
+   *
+   * returns the number of keys k in the tree with from <= k <= to. Runs in O(log n).
+   */
+  public int countRange(int from, int to) {
+	  if (from > to)
+		  return 0;
+	  return countBelow(to, true) - countBelow(from, false);
+  }
+  
+  /**
+   * private int countBelow(int k, boolean inclusive)
+   *
+   * returns the number of keys in the tree that are smaller than k, or smaller or equal if inclusive,
+   * by adding the sizes of the left subtrees on the search path of k.
+   */
+  private int countBelow(int k, boolean inclusive) {
+	  AVLNode x = (AVLNode)this.root;
+	  int count = 0;
+	  while (x != null && x.getKey() != -1) { // until encounters a virtual leaf
+		  if (k < x.getKey() || (k == x.getKey() && !inclusive))
+			  x = (AVLNode)x.getLeft();
+		  else {
+			  count += ((AVLNode)x.getLeft()).getSize() + 1; // the left subtree and x are below k
+			  x = (AVLNode)x.getRight();
+		  }
+	  }
+	  return count;
+  }
+  
+  /**
+   * public PrimitiveIterator.OfInt range(int from, int to)
+   *
+   * returns an iterator over the keys k of the tree with from <= k <= to, in increasing order.
+   * The first key is found with one descent and every next key is the successor of the previous,
+   * so a scan of m keys takes O(log n + m) time and O(1) memory.
+   * the tree must not be changed while the iterator is used.
+   */
+  public PrimitiveIterator.OfInt range(int from, int to) {
+	  return new RangeIterator(ceiling(from), to);
+  }
+  
+  /**
+   * private AVLNode ceiling(int k)
+   *
+   * returns the node with the smallest key that is bigger or equal to k,
+   * or null if there is no such node.
+   */
+  private AVLNode ceiling(int k) {
+	  AVLNode x = (AVLNode)this.root;
+	  AVLNode res = null;
+	  while (x != null && x.getKey() != -1) { // until encounters a virtual leaf
+		  if (k == x.getKey())
+			  return x;
+		  else if (k < x.getKey()) {
+			  res = x; // x is a candidate, a smaller one might be on the left
+			  x = (AVLNode)x.getLeft();
+		  }
+		  else 
+			  x = (AVLNode)x.getRight();
+	  }
+	  return res;
+  }
+  
+  /**
+   * private class RangeIterator
+   *
+   * iterates over the keys from a given node up to a given key, walking with successor.
+   */
+  private class RangeIterator implements PrimitiveIterator.OfInt {
+	  private AVLNode next; // the node of the next key, null when there are no more nodes
+	  private final int to;
+	  
+	  RangeIterator(AVLNode first, int to) {
+		  this.next = first;
+		  this.to = to;
+	  }
+	  
+	  @Override
+	  public boolean hasNext() {
+		  return next != null && next.getKey() <= to;
+	  }
+	  
+	  @Override
+	  public int nextInt() {
+		  if (!hasNext())
+			  throw new NoSuchElementException();
+		  int k = next.getKey();
+		  next = successor(next);
+		  return k;
+	  }
+  }
+  
+  /**
+   * public enum Finger
+   *
+   * where insert, search and delete start looking for a key:
+   * from the root, or by finger search from the minimum, the maximum or the node
+   * of the last insert or delete (searches don't move it). A finger search climbs from the finger only until
+   * the key is in the subtree's range and then descends, which costs O(log d)
+   * for a key d positions away from the finger on sorted or nearly sorted keys.
+   */
+  public enum Finger { ROOT, MIN, MAX, LAST }
+  
+  /**
+   * public void setFinger(Finger finger)
+   *
+   * sets where the following searches start from, Finger.ROOT by default.
+   */
+  public void setFinger(Finger finger) {
+	  this.finger = finger;
+  }
+  
+  /**
+   * public interface Augmentation
+   *
+   * a monoid over a numeric value of every item, kept by every node for its subtree
+   * so that aggregate(from, to) runs in O(log n). combine must be associative and
+   * identity must be its neutral element. value is called once, when the item's node is created.
+   */
+  public interface Augmentation {
+	  long identity(); // the aggregate of no items
+	  long value(int key, String info); // the value of one item
+	  long combine(long left, long right); // the aggregate of two consecutive ranges
+	  
+	  /**
+	   * static Augmentation sum(ToLongFunction<String> payload)
+	   *
+	   * the sum of the payloads of the infos.
+	   */
+	  static Augmentation sum(ToLongFunction<String> payload) {
+		  return new Augmentation() {
+			  public long identity() { return 0; }
+			  public long value(int key, String info) { return payload.applyAsLong(info); }
+			  public long combine(long left, long right) { return left + right; }
+		  };
+	  }
+	  
+	  /**
+	   * static Augmentation min(ToLongFunction<String> payload)
+	   *
+	   * the minimum of the payloads of the infos, Long.MAX_VALUE for no items.
+	   */
+	  static Augmentation min(ToLongFunction<String> payload) {
+		  return new Augmentation() {
+			  public long identity() { return Long.MAX_VALUE; }
+			  public long value(int key, String info) { return payload.applyAsLong(info); }
+			  public long combine(long left, long right) { return Math.min(left, right); }
+		  };
+	  }
+	  
+	  /**
+	   * static Augmentation max(ToLongFunction<String> payload)
+	   *
+	   * the maximum of the payloads of the infos, Long.MIN_VALUE for no items.
+	   */
+	  static Augmentation max(ToLongFunction<String> payload) {
+		  return new Augmentation() {
+			  public long identity() { return Long.MIN_VALUE; }
+			  public long value(int key, String info) { return payload.applyAsLong(info); }
+			  public long combine(long left, long right) { return Math.max(left, right); }
+		  };
+	  }
+  }
+  
+  /**
+   * public void setAugmentation(Augmentation augmentation)
+   *
+   * sets the aggregate kept by the nodes, or none if augmentation is null (the default).
+   * Nodes of an augmented tree carry two more longs, a tree without augmentation keeps plain nodes
+   * and only checks the field where sizes are updated. The tree is rebuilt with new nodes in O(n),
+   * so nodes taken from it before (getRoot) are not in it anymore.
+   */
+  public void setAugmentation(Augmentation augmentation) {
+	  if (augmentation == this.augmentation)
+		  return;
+	  int[] keys = this.keysToArray();
+	  String[] infos = this.infoToArray();
+	  this.augmentation = augmentation;
+	  this.freeNodes = null; // the kept nodes are of the old kind
+	  this.freeCount = 0;
+	  if (this.root != null) {
+		  this.root = buildSorted(keys, infos, 0, keys.length);
+		  this.root.setParent(null);
+	  }
+	  this.resetCachedNodes();
+  }
+  
+  /**
+   * public void setWeak(boolean weak)
+   *
+   * turns the weak AVL (WAVL) mode on or off, off by default. In a weak AVL tree every rank difference
+   * is 1 or 2 and every leaf has rank 0, so a node may be 2,2 and the heights are ranks,
+   * at most 2*log(n). insert and join are the same as in an AVL tree, but delete does at most
+   * two rotations and O(1) amortized rank changes, since 2,2 nodes are left as they are.
+   * Every AVL tree is a weak AVL tree, so turning the mode on costs nothing,
+   * turning it off rebuilds the tree with new nodes in O(n).
+   */
+  public void setWeak(boolean weak) {
+	  if (weak == this.weak)
+		  return;
+	  this.weak = weak;
+	  if (!weak && this.root != null) {
+		  int[] keys = this.keysToArray();
+		  String[] infos = this.infoToArray();
+		  this.root = buildSorted(keys, infos, 0, keys.length);
+		  this.root.setParent(null);
+		  this.resetCachedNodes();
+	  }
+  }
+  
+  /**
+   * public long aggregate(int from, int to)
+   *
+   * returns the aggregate of the values of the items with from <= key <= to, in the order of the keys,
+   * or the identity if there are none. The range is found with one descent to the first node in it,
+   * and then the subtree aggregates along its two boundaries are combined. Runs in O(log n).
+   * precondition: the tree has an augmentation
+   */
+  public long aggregate(int from, int to) {
+	  Augmentation a = this.augmentation;
+	  if (a == null)
+		  throw new IllegalStateException("the tree has no augmentation");
+	  IAVLNode x = this.root;
+	  while (x != null && x.isRealNode() && (x.getKey() < from || x.getKey() > to)) // the highest node in the range
+		  x = (x.getKey() < from) ? x.getRight() : x.getLeft();
+	  if (from > to || x == null || !x.isRealNode())
+		  return a.identity();
+	  
+	  long left = a.identity(); // the keys >= from in x's left subtree
+	  for (IAVLNode n = x.getLeft(); n.isRealNode(); ) {
+		  if (n.getKey() >= from) { // n and its right subtree are in the range
+			  left = a.combine(a.combine(((AugmentedNode)n).value, aggregateOf(n.getRight())), left);
+			  n = n.getLeft();
+		  }
+		  else
+			  n = n.getRight();
+	  }
+	  long right = a.identity(); // the keys <= to in x's right subtree
+	  for (IAVLNode n = x.getRight(); n.isRealNode(); ) {
+		  if (n.getKey() <= to) { // n and its left subtree are in the range
+			  right = a.combine(right, a.combine(aggregateOf(n.getLeft()), ((AugmentedNode)n).value));
+			  n = n.getRight();
+		  }
+		  else
+			  n = n.getLeft();
+	  }
+	  return a.combine(a.combine(left, ((AugmentedNode)x).value), right);
+  }
+  
+  /**
+   * private AVLNode newNode(int key, String info)
+   *
+   * creates a node for the tree, an augmented node with its own value as its aggregate if the tree is augmented.
+   */
+  private AVLNode newNode(int key, String info) {
+	  AVLNode n = this.freeNodes;
+	  if (n != null) { // a recycled node, its children are already virtual
+		  this.freeNodes = (AVLNode)n.getParent();
+		  this.freeCount--;
+		  n.key = key;
+		  n.info = info;
+		  n.setParent(null);
+		  n.setHeight(0);
+		  n.setSize(1);
+	  }
+	  else if (this.augmentation == null)
+		  return new AVLNode(key, info);
+	  else
+		  n = new AugmentedNode(key, info);
+	  if (this.augmentation != null) {
+		  AugmentedNode m = (AugmentedNode)n;
+		  m.value = this.augmentation.value(key, info);
+		  m.aggregate = m.value;
+	  }
+	  return n;
+  }
+  
+  /**
+   * public void setNodePool(int capacity)
+   *
+   * keeps up to capacity nodes of deleted items (and of the path nodes replaced by a split)
+   * and reuses them for the next inserted items instead of allocating new nodes, 0 by default.
+   * With a pool, a node taken from the tree (getRoot) must not be used after its item was deleted.
+   * 0 turns the pool off and drops the kept nodes.
+   */
+  public void setNodePool(int capacity) {
+	  if (capacity < 0)
+		  throw new IllegalArgumentException("capacity must not be negative");
+	  this.poolCapacity = capacity;
+	  while (this.freeCount > capacity) {
+		  this.freeNodes = (AVLNode)this.freeNodes.getParent();
+		  this.freeCount--;
+	  }
+  }
+  
+  /**
+   * private void recycle(AVLNode n)
+   *
+   * puts a node that was removed from the tree in the pool, if the pool isn't full.
+   */
+  private void recycle(AVLNode n) {
+	  if (this.freeCount >= this.poolCapacity)
+		  return;
+	  n.info = null; // lets the GC collect the info
+	  n.setLeft(VIRTUAL_LEAF);
+	  n.setRight(VIRTUAL_LEAF);
+	  n.setParent(this.freeNodes);
+	  this.freeNodes = n;
+	  this.freeCount++;
+  }
+  
+  /**
+   * private void movePool(AVLTree to)
+   *
+   * moves the pool's capacity and kept nodes to the tree to, the tree keeps its capacity with an empty pool.
+   */
+  private void movePool(AVLTree to) {
+	  to.poolCapacity = this.poolCapacity;
+	  to.freeNodes = this.freeNodes;
+	  to.freeCount = this.freeCount;
+	  this.freeNodes = null;
+	  this.freeCount = 0;
+  }
+  
+  /**
+   * private void recycleSubtree(AVLNode n)
+   *
+   * recycles the nodes of the detached subtree of n in post-order, until the pool is full.
+   */
+  private void recycleSubtree(AVLNode n) {
+	  if (n.getKey() == -1 || this.freeCount >= this.poolCapacity)
+		  return;
+	  AVLNode left = (AVLNode)n.getLeft();
+	  AVLNode right = (AVLNode)n.getRight();
+	  recycleSubtree(left);
+	  recycleSubtree(right);
+	  recycle(n);
+  }
+  
+  /**
+   * private AVLTree emptyLike()
+   *
+   * returns an empty tree with the tree's augmentation, balance mode and finger, for the parts of a split.
+   */
+  private AVLTree emptyLike() {
+	  AVLTree t = new AVLTree();
+	  t.augmentation = this.augmentation;
+	  t.weak = this.weak;
+	  t.finger = this.finger;
+	  return t;
+  }
+  
+  /**
+   * private AVLTree context()
+   *
+   * returns an empty tree like emptyLike that searches from the root, to host the rotations of the joins
+   * of a split, a batch or a set operation on detached subtrees. It doesn't keep its extremes.
+   */
+  private AVLTree context() {
+	  AVLTree t = emptyLike();
+	  t.finger = Finger.ROOT;
+	  return t;
+  }
+  
+  /**
+   * private AVLNode fingerStart(int k)
+   *
+   * returns the node to descend from when looking for k: the root, or the lowest ancestor
+   * of the finger whose subtree's range holds k. Climbing stops at the first ancestor
+   * whose key bounds the range on k's side.
+   * precondition: the tree is not empty
+   */
+  private AVLNode fingerStart(int k) {
+	  AVLNode cur;
+	  if (this.finger == Finger.MIN)
+		  cur = firstNode();
+	  else if (this.finger == Finger.MAX)
+		  cur = lastNode();
+	  else if (this.finger == Finger.LAST && this.lastTouched != null)
+		  cur = this.lastTouched;
+	  else
+		  return (AVLNode)this.root;
+	  
+	  if (k >= lastNode().getKey()) // no ancestor bounds a key above the maximum, its place is next to it
+		  return lastNode();
+	  if (k <= firstNode().getKey())
+		  return firstNode();
+	  if (k < cur.getKey()) { // climbing until a parent on the left isn't bigger than k
+		  while (cur.getParent() != null) {
+			  AVLNode p = (AVLNode)cur.getParent();
+			  if (p.getRight() == cur && p.getKey() <= k)
+				  return (p.getKey() == k) ? p : cur; // p's key bounds cur's subtree from below
+			  cur = p;
+		  }
+	  }
+	  else if (k > cur.getKey()) { // climbing until a parent on the right isn't smaller than k
+		  while (cur.getParent() != null) {
+			  AVLNode p = (AVLNode)cur.getParent();
+			  if (p.getLeft() == cur && p.getKey() >= k)
+				  return (p.getKey() == k) ? p : cur; // p's key bounds cur's subtree from above
+			  cur = p;
+		  }
+	  }
+	  return cur;
+  }
+  
   /**
    * private IAVLNode treePosition(int k)
    *
    * finds the place to insert the given key,
    * return the place's node parent.
    * if the key exists in tree, returns the existing node with the given key.
+   * The search starts from the finger, which it doesn't move.
    **/
   private AVLNode treePosition(int k) {
-	  AVLNode x = (AVLNode)this.getRoot();
+	  AVLNode x = fingerStart(k);
 	  AVLNode y = x;
 	  while (x.getKey() != -1) { // until encounters a virtual leaf
 		  y = x;
 		  if (k == x.getKey())
-			  return x; // returns the node with the given key if found in tree
+			  break; // returns the node with the given key if found in tree
 		  else if (k < x.getKey())
 			  x = (AVLNode)x.getLeft();
 		  else 
 			  x = (AVLNode)x.getRight();
 	  }
-	  return y; // return the parent
+	  return y; // return the node or the parent
   }
 
   /**
@@ -196,16 +827,35 @@ public class AVLTree {
   /**
    * private void updateSize(AVLNode n)
    *
-   * The method gets a node and updates its and all its parents' size attribute. 
+   * The method gets a node and updates its size attribute from its children's sizes.
+   * The sizes of its ancestors are updated by the rebalancing pass.
    */
   private void updateSize(AVLNode n) {
-	  AVLNode cur = n;
-	  while (cur != null) {
-		  AVLNode curLeft = (AVLNode)cur.getLeft();
-		  AVLNode curRight = (AVLNode)cur.getRight();
-		  cur.setSize(curLeft.getSize()+curRight.getSize()+1);
-		  cur = (AVLNode)cur.getParent();
-	  }
+	  AVLNode nLeft = (AVLNode)n.getLeft();
+	  AVLNode nRight = (AVLNode)n.getRight();
+	  n.setSize(nLeft.getSize()+nRight.getSize()+1);
+	  if (this.augmentation != null)
+		  updateAggregate(n);
+  }
+  
+  /**
+   * private void updateAggregate(AVLNode n)
+   *
+   * The method gets a node of an augmented tree and recomputes its aggregate from its children's aggregates.
+   */
+  private void updateAggregate(AVLNode n) {
+	  Augmentation a = this.augmentation;
+	  AugmentedNode m = (AugmentedNode)n;
+	  m.aggregate = a.combine(a.combine(aggregateOf(n.getLeft()), m.value), aggregateOf(n.getRight()));
+  }
+  
+  /**
+   * private long aggregateOf(IAVLNode n)
+   *
+   * returns the aggregate of n's subtree, the identity for the virtual leaf.
+   */
+  private long aggregateOf(IAVLNode n) {
+	  return n.isRealNode() ? ((AugmentedNode)n).aggregate : this.augmentation.identity();
   }
   
   
@@ -259,6 +909,9 @@ public class AVLTree {
 		  }
 	  else
 		  this.root = n;
+	  n.setSize(z.getSize()); // n takes z's place, z's subtree keeps its size
+	  if (this.augmentation != null) // and its aggregate
+		  ((AugmentedNode)n).aggregate = ((AugmentedNode)z).aggregate;
 	  updateSize(z);
 	  return 1; // one for rotating
   }
@@ -291,6 +944,9 @@ public class AVLTree {
 	  }
 	  else
 		  this.root = n; // the new root
+	  n.setSize(z.getSize()); // n takes z's place, z's subtree keeps its size
+	  if (this.augmentation != null) // and its aggregate
+		  ((AugmentedNode)n).aggregate = ((AugmentedNode)z).aggregate;
 	  updateSize(z);
 	  return 1; // one for rotating
   }
@@ -324,45 +980,72 @@ public class AVLTree {
   }  
 
   /**
-   * private int rebalanceInsert(AVLNode n)
+   * private int rebalanceInsert(AVLNode p, int delta)
    *
-   * The method gets a node and rebalances the tree according to node's state.
-   * The method calls promote and rotations if needed.
+   * The method gets a node whose subtree got delta new nodes, and rebalances the tree bottom up from it.
+   * The method calls promote and rotations if needed, and adds delta to the size attribute
+   * of every node on the way to the root, in the same pass.
    * The method returns sum of rebalancing operations that were taken.
    */   
-  private int rebalanceInsert(AVLNode p) {
-	  if (p == null)
-		  return 0;
-	  
-	  AVLNode leftChild = (AVLNode)p.getLeft();
-	  AVLNode rightChild = (AVLNode)p.getRight();
-	  AVLNode leftLeftChild = (AVLNode)p.getLeft().getLeft();
-	  AVLNode leftRightChild = (AVLNode)p.getLeft().getRight();
-	  AVLNode rightLeftChild = (AVLNode)p.getRight().getLeft();
-	  AVLNode rightRightChild = (AVLNode)p.getRight().getRight();
-	  
-	  if (rankDiff(p, leftChild) == 0) { // left child focus
-		  if (rankDiff(p, rightChild) == 1) // 0,1 needs promotion
-				  return promote(p) + rebalanceInsert((AVLNode)p.getParent());
-		  else if (rankDiff(p, rightChild) == 2) {// 0,2
-			  if (rankDiff(leftChild, leftLeftChild) == 1 && rankDiff(leftChild, leftRightChild) == 2) // 1,2 right rotation 
-				  return demote(p) + rightRotate(p, leftChild);
-			  else if (rankDiff(leftChild, leftLeftChild) == 2 && rankDiff(leftChild, leftRightChild) == 1) // 2,1 leftRight rotation
-				  return demote(leftChild) + demote(p) + promote(leftRightChild) + leftRightRotate(leftChild, leftRightChild); 
+  private int rebalanceInsert(AVLNode p, int delta) {
+	  int num = 0;
+	  boolean balanced = false; // once true, only the sizes are updated
+	  while (p != null) {
+		  p.setSize(p.getSize() + delta);
+		  if (this.augmentation != null) // the aggregates below p are up to date
+			  updateAggregate(p);
+		  if (!balanced) {
+			  AVLNode leftChild = (AVLNode)p.getLeft();
+			  AVLNode rightChild = (AVLNode)p.getRight();
+			  balanced = true;
+			  
+			  if (rankDiff(p, leftChild) == 0) { // left child focus
+				  AVLNode leftLeftChild = (AVLNode)leftChild.getLeft();
+				  AVLNode leftRightChild = (AVLNode)leftChild.getRight();
+				  if (rankDiff(p, rightChild) == 1) { // 0,1 needs promotion
+					  num += promote(p);
+					  balanced = false;
+				  }
+				  else if (rankDiff(leftChild, leftLeftChild) == 1 && rankDiff(leftChild, leftRightChild) == 2) { // 1,2 right rotation 
+					  num += demote(p) + rightRotate(p, leftChild);
+					  p = leftChild;
+				  }
+				  else if (rankDiff(leftChild, leftLeftChild) == 2 && rankDiff(leftChild, leftRightChild) == 1) { // 2,1 leftRight rotation
+					  num += demote(leftChild) + demote(p) + promote(leftRightChild) + leftRightRotate(leftChild, leftRightChild);
+					  p = leftRightChild;
+				  }
+				  else { // 1,1 happens only after join, the rotated subtree grows by one
+					  num += promote(leftChild) + rightRotate(p, leftChild);
+					  p = leftChild;
+					  balanced = false;
+				  }
+			  }
+			  
+			  else if (rankDiff(p, rightChild) == 0) { // right child focus
+				  AVLNode rightLeftChild = (AVLNode)rightChild.getLeft();
+				  AVLNode rightRightChild = (AVLNode)rightChild.getRight();
+				  if (rankDiff(p, leftChild) == 1) { // 1,0 needs promotion
+					  num += promote(p);
+					  balanced = false;
+				  }
+				  else if (rankDiff(rightChild, rightLeftChild) == 2 && rankDiff(rightChild, rightRightChild) == 1) { // 2,1 left rotation 
+					  num += demote(p) + leftRotate(p, rightChild);
+					  p = rightChild;
+				  }
+				  else if (rankDiff(rightChild, rightLeftChild) == 1 && rankDiff(rightChild, rightRightChild) == 2) { // 1,2 rightLeft rotation
+					  num += demote(rightChild) + demote(p) + promote(rightLeftChild) + rightLeftRotate(rightChild, rightLeftChild);
+					  p = rightLeftChild;
+				  }
+				  else { // 1,1 happens only after join, the rotated subtree grows by one
+					  num += promote(rightChild) + leftRotate(p, rightChild);
+					  p = rightChild;
+					  balanced = false;
+				  }
+			  }
 		  }
+		  p = (AVLNode)p.getParent(); // p is the root of the rebalanced subtree
 	  }
-	  
-	  else if (rankDiff(p, rightChild) == 0) { // right child focus
-		  if (rankDiff(p, leftChild) == 1) // 1,0 needs promotion
-			  return promote(p) + rebalanceInsert((AVLNode)p.getParent());
-		  else if (rankDiff(p, leftChild) == 2) {// 2,0
-			  if (rankDiff(rightChild, rightLeftChild) == 2 && rankDiff(rightChild, rightRightChild) == 1) // 2,1 left rotation 
-				  return demote(p) + leftRotate(p, rightChild);
-			  else if (rankDiff(rightChild, rightLeftChild) == 1 && rankDiff(rightChild, rightRightChild) == 2) // 1,2 rightLeft rotation
-				  return demote(rightChild) + demote(p) + promote(rightLeftChild) + rightLeftRotate(rightChild, rightLeftChild); 
-		  }
-	  }  
-	  return 0; // no rebalancing operations were taken
+	  return num; // sum of rebalancing operations that were taken
   }
   
   /**
@@ -375,25 +1058,45 @@ public class AVLTree {
    * returns -1 if an item with key k already exists in the tree.
    */
    public int insert(int k, String i) {
-	   AVLNode n = new AVLNode(k, i);
+	   AVLNode n = newNode(k, i);
+	   int num = insertNode(n);
+	   if (num == -1) // k is already in the tree, n goes back to the pool
+		   recycle(n);
+	   return num;
+   }
+   
+   /**
+    * private int insertNode(AVLNode n)
+    *
+    * inserts the node n as a leaf, as insert does with a new node.
+    * precondition: n is detached, with no children, height 0, size 1 and its own value as its aggregate
+    */
+   private int insertNode(AVLNode n) {
 	   if (this.getRoot() == null) { // if the tree is empty
 		   this.root = n;
+		   this.minNode = n;
+		   this.maxNode = n;
+		   this.lastTouched = n;
 		   return 0;
 	   }
 	   int num = insertBST(n); //inserting n according to BST rules
 	   if (num == -1) // if the key already exists in tree
 		   return -1;
 	   else 
-		   num = rebalanceInsert((AVLNode)n.getParent()); // rebalancing the tree
+		   num = rebalanceInsert((AVLNode)n.getParent(), 1); // rebalancing the tree and updating the sizes
 	   
-	   updateSize(n); // updating the size attribute of the relevant nodes
+	   if (this.minNode != null && n.getKey() < this.minNode.getKey()) // updating the extremes, unless the tree only hosts an operation
+		   this.minNode = n;
+	   if (this.maxNode != null && n.getKey() > this.maxNode.getKey())
+		   this.maxNode = n;
+	   this.lastTouched = n;
 	   return num; // return number of rebalancing operations
    }
 
    /**
     * private AVLNode successor(AVLNode n)
     *
-    * gets a node and return its successor node.
+    * gets a node and return its successor node, or null if it is the maximum.
     */
    private AVLNode successor(AVLNode n) {
  	  AVLNode cur = n;
@@ -404,61 +1107,53 @@ public class AVLTree {
  		  return cur;
  	  }
  	  else { // node doesn't have a real right child
- 		  while (cur.getParent().getRight() == cur) // cur is a right child
+ 		  while (cur.getParent() != null && cur.getParent().getRight() == cur) // cur is a right child
  			  cur = (AVLNode)cur.getParent();
  		  return (AVLNode)cur.getParent();
  	  }
    }   
    
    /**
-    * private void deleteBST(IAVLNode n)
+    * private AVLNode predecessor(AVLNode n)
     *
-    * deletes node from the AVL tree according to BST invariants.
-    * The method doesn't rebalance the tree.
-    * The method returns the parent of the deleted node.
+    * gets a node and return its predecessor node, or null if it is the minimum.
     */
-   private AVLNode deleteBST(AVLNode n) {
- 	AVLNode y = (AVLNode)n.getParent(); // return the parent of the node
- 	if (n.getLeft().getKey() == -1 && n.getRight().getKey() == -1) { // deleting a leaf
- 		if(this.root == n) { //deleting a leaf wich is the root
- 			this.root =null;
- 			return null;
- 		}
- 		else if (y.getLeft() == n) { // node is a left leaf
- 			y.setLeft(n.getLeft());
- 			n.getLeft().setParent(y);
- 			}
- 		else { // node is a right leaf
- 			y.setRight(n.getRight());
- 			n.getRight().setParent(y);
- 			}
- 		return y;
- 		}
- 	else if (this.root != n && (n.getLeft().getKey() == -1 || n.getRight().getKey() == -1)) { // deleting an unary node which is not the root
- 			if (y.getLeft() == n) { // node is a left child
- 				if (n.getLeft().getKey() == -1) {// wants to replace with right child
- 					y.setLeft(n.getRight());
- 					n.getRight().setParent(y);
- 				}
- 				else { // wants to replace with left child
- 					y.setLeft(n.getLeft());
- 					n.getLeft().setParent(y);
- 				}
- 			}
- 			else { // node is a right child
- 				if (n.getLeft().getKey() == -1) {// wants to replace with right child
- 					y.setRight(n.getRight());
- 					n.getRight().setParent(y);
- 				}
- 				else { // wants to replace with left child
- 					y.setRight(n.getLeft());
- 					n.getLeft().setParent(y);
- 				}
- 				
- 			}
- 			return y;
- 		}
- 	else { // deleting a node with two children
+   private AVLNode predecessor(AVLNode n) {
+ 	  AVLNode cur = n;
+ 	  if (n.getLeft().getKey() != -1) {// node has a real left child
+ 		  cur = (AVLNode)n.getLeft();
+ 		  while (cur.getRight().getKey() != -1)
+ 			  cur = (AVLNode)cur.getRight();
+ 		  return cur;
+ 	  }
+ 	  else { // node doesn't have a real left child
+ 		  while (cur.getParent() != null && cur.getParent().getLeft() == cur) // cur is a left child
+ 			  cur = (AVLNode)cur.getParent();
+ 		  return (AVLNode)cur.getParent();
+ 	  }
+   }   
+   
+   /**
+    * private void deleteBST(IAVLNode n)
+    *
+    * deletes node from the AVL tree according to BST invariants.
+    * The method doesn't rebalance the tree and doesn't update the sizes above the deleted node.
+    * The method returns the parent of the deleted node, or null if it was the root.
+    */
+   private AVLNode deleteBST(AVLNode n) {
+ 	AVLNode y = (AVLNode)n.getParent(); // return the parent of the node
+ 	if (n.getLeft().getKey() == -1 || n.getRight().getKey() == -1) { // deleting a leaf or an unary node
+ 		AVLNode child = (AVLNode)(n.getLeft().getKey() != -1 ? n.getLeft() : n.getRight());
+ 		child.setParent(y);
+ 		if (y == null) // n is the root
+ 			this.root = (child.getKey() == -1) ? null : child;
+ 		else if (y.getLeft() == n)
+ 			y.setLeft(child);
+ 		else
+ 			y.setRight(child);
+ 		return y;
+ 	}
+ 	else { // deleting a node with two children
  		AVLNode m = successor(n);
  		AVLNode p = (AVLNode)m.getParent();
  		deleteBST(m); // deleting successor from tree
@@ -474,6 +1169,7 @@ public class AVLTree {
  		
  		m.setParent(y);
  		m.setHeight(n.getHeight());
+ 		m.setSize(n.getSize()); // decremented with the rest of the path by rebalanceDelete
  		n.getLeft().setParent(m);
  		m.setLeft(n.getLeft());
  		n.getRight().setParent(m);
@@ -488,46 +1184,150 @@ public class AVLTree {
    
    
    /**
-    * private int rebalanceDelete(AVLNode n)
+    * private int rebalanceDelete(AVLNode p)
     *
-    * The method gets a node and rebalances the tree according to node's state.
-    * The method calls promote and rotations if needed.
+    * The method gets the parent of a deleted node and rebalances the tree bottom up from it.
+    * The method calls demote and rotations if needed, and subtracts one from the size attribute
+    * of every node on the way to the root, in the same pass.
     * The method returns sum of rebalancing operations that were taken.
     */   
    private int rebalanceDelete(AVLNode p) {
-	  if (p == null) // finished bottom up rebalancing
-		  return 0;
-	  
-	  AVLNode leftChild = (AVLNode)p.getLeft();
-	  AVLNode rightChild = (AVLNode)p.getRight();
-	  
- 	  if (rankDiff(p, leftChild) == 2 && rankDiff(p, rightChild) == 2) // rank differences 2,2
- 			  return demote(p) + rebalanceDelete((AVLNode)p.getParent());
- 	  else if (rankDiff(p, leftChild) == 3 && rankDiff(p, rightChild) == 1) {// rank differences 3,1
- 		  if (rankDiff(rightChild, (AVLNode)rightChild.getLeft()) == 1 // 1,1
- 				  && rankDiff(rightChild, (AVLNode)rightChild.getRight()) == 1) 
- 			  return demote(p) + promote(rightChild) + leftRotate(p, rightChild);
- 		  else if (rankDiff(rightChild, (AVLNode)rightChild.getLeft()) == 2 // 2,1
-				  && rankDiff(rightChild, (AVLNode)rightChild.getRight()) == 1) 
-			  return demote(p) + demote(p) + leftRotate(p, rightChild) + rebalanceDelete((AVLNode)p.getParent());
- 		  else if (rankDiff(rightChild, (AVLNode)rightChild.getLeft()) == 1 // 1,2
-				  && rankDiff(rightChild, (AVLNode)rightChild.getRight()) == 2) 
- 			  return demote(p) + demote(p) + demote(rightChild) + promote((AVLNode)rightChild.getLeft()) 
- 				  + rightLeftRotate(rightChild, (AVLNode)rightChild.getLeft()) + rebalanceDelete((AVLNode)p.getParent()); // 1,2
- 	  }
- 	 else if (rankDiff(p, leftChild) == 1 && rankDiff(p, rightChild) == 3) {// rank differences 1,3
-		  if (rankDiff(leftChild, (AVLNode)leftChild.getLeft()) == 1 // 1,1
-				  && rankDiff(leftChild, (AVLNode)leftChild.getRight()) == 1) 
-			  return demote(p) + promote(leftChild) + rightRotate(p, leftChild);
-		  else if (rankDiff(leftChild, (AVLNode)leftChild.getLeft()) == 1 // 1,2
-				  && rankDiff(leftChild, (AVLNode)leftChild.getRight()) == 2) 
-			  return demote(p) + demote(p) + rightRotate(p, leftChild) + rebalanceDelete((AVLNode)p.getParent());
-		  else if (rankDiff(leftChild, (AVLNode)leftChild.getLeft()) == 2 // 2,1
-				  && rankDiff(leftChild, (AVLNode)leftChild.getRight()) == 1) 
-			  return demote(p) + demote(p) + demote(leftChild) + promote((AVLNode)leftChild.getRight()) 
-			  	+ leftRightRotate(leftChild, (AVLNode)leftChild.getRight()) + rebalanceDelete((AVLNode)p.getParent()); // 2,1 
-	  }
- 	  return 0; // no rebalancing operation was taken
+	  int num = 0;
+	  boolean balanced = false; // once true, only the sizes are updated
+	  while (p != null) {
+		  p.setSize(p.getSize() - 1);
+		  if (this.augmentation != null) // the aggregates below p are up to date
+			  updateAggregate(p);
+		  if (!balanced) {
+			  AVLNode leftChild = (AVLNode)p.getLeft();
+			  AVLNode rightChild = (AVLNode)p.getRight();
+			  balanced = true;
+			  
+			  if (rankDiff(p, leftChild) == 2 && rankDiff(p, rightChild) == 2) { // rank differences 2,2
+				  num += demote(p);
+				  balanced = false;
+			  }
+			  else if (rankDiff(p, leftChild) == 3 && rankDiff(p, rightChild) == 1) { // rank differences 3,1
+				  AVLNode rightLeftChild = (AVLNode)rightChild.getLeft();
+				  if (rankDiff(rightChild, rightLeftChild) == 1 // 1,1
+						  && rankDiff(rightChild, (AVLNode)rightChild.getRight()) == 1) {
+					  num += demote(p) + promote(rightChild) + leftRotate(p, rightChild);
+					  p = rightChild;
+				  }
+				  else if (rankDiff(rightChild, rightLeftChild) == 2) { // 2,1
+					  num += demote(p) + demote(p) + leftRotate(p, rightChild);
+					  p = rightChild;
+					  balanced = false;
+				  }
+				  else { // 1,2
+					  num += demote(p) + demote(p) + demote(rightChild) + promote(rightLeftChild)
+					  	+ rightLeftRotate(rightChild, rightLeftChild);
+					  p = rightLeftChild;
+					  balanced = false;
+				  }
+			  }
+			  else if (rankDiff(p, leftChild) == 1 && rankDiff(p, rightChild) == 3) { // rank differences 1,3
+				  AVLNode leftRightChild = (AVLNode)leftChild.getRight();
+				  if (rankDiff(leftChild, (AVLNode)leftChild.getLeft()) == 1 // 1,1
+						  && rankDiff(leftChild, leftRightChild) == 1) {
+					  num += demote(p) + promote(leftChild) + rightRotate(p, leftChild);
+					  p = leftChild;
+				  }
+				  else if (rankDiff(leftChild, leftRightChild) == 2) { // 1,2
+					  num += demote(p) + demote(p) + rightRotate(p, leftChild);
+					  p = leftChild;
+					  balanced = false;
+				  }
+				  else { // 2,1
+					  num += demote(p) + demote(p) + demote(leftChild) + promote(leftRightChild)
+					  	+ leftRightRotate(leftChild, leftRightChild);
+					  p = leftRightChild;
+					  balanced = false;
+				  }
+			  }
+		  }
+		  p = (AVLNode)p.getParent(); // p is the root of the rebalanced subtree
+	  }
+	  return num; // sum of rebalancing operations that were taken
+   }
+    
+
+   /**
+    * private int rebalanceWeakDelete(AVLNode p)
+    *
+    * The method gets the parent of a deleted node of a weak AVL tree and rebalances the tree bottom up from it,
+    * subtracting one from the sizes on the way to the root as rebalanceDelete does.
+    * A 2,2 leaf is demoted, and a child with rank difference 3 is fixed by demotions while its sibling
+    * allows it, or else by a single or a double rotation, which ends the rebalancing.
+    * The method returns sum of rebalancing operations that were taken.
+    */
+   private int rebalanceWeakDelete(AVLNode p) {
+	  int num = 0;
+	  boolean balanced = false; // once true, only the sizes are updated
+	  while (p != null) {
+		  p.setSize(p.getSize() - 1);
+		  if (this.augmentation != null) // the aggregates below p are up to date
+			  updateAggregate(p);
+		  if (!balanced) {
+			  AVLNode leftChild = (AVLNode)p.getLeft();
+			  AVLNode rightChild = (AVLNode)p.getRight();
+			  balanced = true;
+			  
+			  if (rankDiff(p, leftChild) == 2 && rankDiff(p, rightChild) == 2 && leftChild.getKey() == -1
+					  && rightChild.getKey() == -1) { // 2,2 leaf
+				  num += demote(p);
+				  balanced = false;
+			  }
+			  else if (rankDiff(p, leftChild) == 3) { // the right child is the sibling
+				  AVLNode rightLeftChild = (AVLNode)rightChild.getLeft();
+				  AVLNode rightRightChild = (AVLNode)rightChild.getRight();
+				  if (rankDiff(p, rightChild) == 2) { // 3,2
+					  num += demote(p);
+					  balanced = false;
+				  }
+				  else if (rankDiff(rightChild, rightLeftChild) == 2 && rankDiff(rightChild, rightRightChild) == 2) { // 3,1 with a 2,2 sibling
+					  num += demote(p) + demote(rightChild);
+					  balanced = false;
+				  }
+				  else if (rankDiff(rightChild, rightRightChild) == 1) { // left rotation
+					  num += demote(p) + promote(rightChild) + leftRotate(p, rightChild);
+					  if (p.getLeft().getKey() == -1 && p.getRight().getKey() == -1) // p became a 2,2 leaf
+						  num += demote(p);
+					  p = rightChild;
+				  }
+				  else { // rightLeft rotation
+					  num += demote(p) + demote(p) + demote(rightChild) + promote(rightLeftChild) + promote(rightLeftChild)
+					  	+ rightLeftRotate(rightChild, rightLeftChild);
+					  p = rightLeftChild;
+				  }
+			  }
+			  else if (rankDiff(p, rightChild) == 3) { // the left child is the sibling
+				  AVLNode leftLeftChild = (AVLNode)leftChild.getLeft();
+				  AVLNode leftRightChild = (AVLNode)leftChild.getRight();
+				  if (rankDiff(p, leftChild) == 2) { // 2,3
+					  num += demote(p);
+					  balanced = false;
+				  }
+				  else if (rankDiff(leftChild, leftLeftChild) == 2 && rankDiff(leftChild, leftRightChild) == 2) { // 1,3 with a 2,2 sibling
+					  num += demote(p) + demote(leftChild);
+					  balanced = false;
+				  }
+				  else if (rankDiff(leftChild, leftLeftChild) == 1) { // right rotation
+					  num += demote(p) + promote(leftChild) + rightRotate(p, leftChild);
+					  if (p.getLeft().getKey() == -1 && p.getRight().getKey() == -1) // p became a 2,2 leaf
+						  num += demote(p);
+					  p = leftChild;
+				  }
+				  else { // leftRight rotation
+					  num += demote(p) + demote(p) + demote(leftChild) + promote(leftRightChild) + promote(leftRightChild)
+					  	+ leftRightRotate(leftChild, leftRightChild);
+					  p = leftRightChild;
+				  }
+			  }
+		  }
+		  p = (AVLNode)p.getParent(); // p is the root of the rebalanced subtree
+	  }
+	  return num; // sum of rebalancing operations that were taken
    }
     
 
@@ -550,42 +1350,53 @@ public class AVLTree {
 	   if (n.getKey() != k) // not in tree
 		   return -1;
 	   
-	   AVLNode p = deleteBST(n); // deleting n according to BST rules
-	   int result = rebalanceDelete(p); // rebalancing the tree 
-	   updateSize(p); // updating the size attribute of the relevant nodes
+	   int num = deleteNode(n);
+	   recycle(n);
+	   return num;
+   }
+   
+   
+   /**
+    * private int deleteNode(AVLNode n)
+    *
+    * deletes the node n from the tree, as delete does with the node of its key, and updates the cached extremes.
+    * returns the number of rebalancing operations.
+    */
+   private int deleteNode(AVLNode n)
+   {
+	   if (n == this.minNode) // the successor keeps its node when it replaces n
+		   this.minNode = successor(n);
+	   if (n == this.maxNode)
+		   this.maxNode = predecessor(n);
 	   
-	   return result; 
+	   AVLNode p = deleteBST(n); // deleting n according to BST rules
+	   this.lastTouched = p; // a node near n that is still in the tree
+	   if (this.weak)
+		   return rebalanceWeakDelete(p);
+	   return rebalanceDelete(p); // rebalancing the tree and updating the sizes
    }
 
    
    /**
-    * public IAVLNode[] nodesToArray()
+    * private AVLNode firstNode()
     *
-    * Returns a sorted array which contains all nodes in the tree,
-    * sorted by their respective keys,
-    * or an empty array if the tree is empty.
+    * Returns the node with the smallest key in the tree,
+    * or null if the tree is empty. The node is kept up to date by every change of the tree.
     */
-   private IAVLNode[] nodesToArray()
+   private AVLNode firstNode()
    {
-	   Stack<IAVLNode> s = new Stack<IAVLNode>(); // creating a stack to hold keys that we saw but didn't add to the array
-	   IAVLNode[] arr = new IAVLNode[this.size()]; // creating the keys array that we will return
-	   if(this.size() == 0) // tree is empty
-		   return arr;
-	   int index = 0; // index of the cur node in array
-	   IAVLNode cur = this.root; // starting from root
-	   while (cur.getKey() != -1 || !s.isEmpty()) { // until cur is a virtual leaf or the stack is empty
-		   if (cur.getKey() != -1) {
-			   s.push(cur); 
-			   cur = cur.getLeft();
-			   }
-		   else { // got to a virtual leaf
-			   IAVLNode n = s.pop(); // cur minimum
-			   arr[index] = n; // adding to arr
-			   index++;
-			   cur = n.getRight(); // moving to the right
-			   }
-		   }
-	   return arr;
+	   return this.minNode;
+   }
+   
+   /**
+    * private AVLNode lastNode()
+    *
+    * Returns the node with the largest key in the tree,
+    * or null if the tree is empty. The node is kept up to date by every change of the tree.
+    */
+   private AVLNode lastNode()
+   {
+	   return this.maxNode;
    }
    
 
@@ -594,16 +1405,157 @@ public class AVLTree {
    *
    * Returns a sorted array which contains all keys in the tree,
    * or an empty array if the tree is empty.
+   * The tree is walked in order with the parent pointers, O(n) in total.
    */
   public int[] keysToArray()
   {
-	  IAVLNode[] nodesArr = nodesToArray();
 	  int[] arr = new int[this.size()];
-	  for (int i=0; i<arr.length; i++)
-		  arr[i] = nodesArr[i].getKey();
+	  int i = 0;
+	  for (AVLNode n = firstNode(); n != null; n = successor(n))
+		  arr[i++] = n.getKey();
 	  return arr;
   }
-
+  
+  
+  /**
+   * public IntStream keys()
+   *
+   * Returns a sequential stream of the keys in the tree, in increasing order.
+   * The stream is SIZED, SORTED, DISTINCT and ORDERED and splits without copying,
+   * so keys().parallel() splits the tree by its subtrees.
+   * the tree must not be changed while the stream is used.
+   */
+  public IntStream keys()
+  {
+	  return StreamSupport.intStream(new KeySpliterator(0, this.size(), null), false);
+  }
+  
+  
+  /**
+   * private class KeySpliterator
+   *
+   * a spliterator over the keys with indices from..to-1 in keysToArray().
+   * trySplit splits at the root of the smallest subtree that holds the range,
+   * found with one descent by the sizes, so a whole subtree splits into its left subtree and the rest.
+   */
+  private class KeySpliterator implements Spliterator.OfInt {
+	  private int from;
+	  private final int to;
+	  private AVLNode next; // the node with index from, null until it is needed
+	  
+	  KeySpliterator(int from, int to, AVLNode next) {
+		  this.from = from;
+		  this.to = to;
+		  this.next = next;
+	  }
+	  
+	  @Override
+	  public boolean tryAdvance(IntConsumer action) {
+		  if (from >= to)
+			  return false;
+		  if (next == null)
+			  next = selectNode(from);
+		  action.accept(next.getKey());
+		  from++;
+		  next = (from < to) ? successor(next) : null;
+		  return true;
+	  }
+	  
+	  @Override
+	  public void forEachRemaining(IntConsumer action) {
+		  if (from >= to)
+			  return;
+		  AVLNode n = (next != null) ? next : selectNode(from);
+		  for (int i = from; i < to; i++) {
+			  action.accept(n.getKey());
+			  if (i + 1 < to)
+				  n = successor(n);
+		  }
+		  from = to;
+		  next = null;
+	  }
+	  
+	  @Override
+	  public Spliterator.OfInt trySplit() {
+		  if (to - from < 2)
+			  return null;
+		  AVLNode x = (AVLNode)root;
+		  int base = 0; // the number of keys left of x's subtree
+		  while (true) { // looking for a node with an index in from+1..to-1
+			  int index = base + ((AVLNode)x.getLeft()).getSize();
+			  if (index <= from) {
+				  base = index + 1;
+				  x = (AVLNode)x.getRight();
+			  }
+			  else if (index >= to)
+				  x = (AVLNode)x.getLeft();
+			  else {
+				  KeySpliterator prefix = new KeySpliterator(from, index, next);
+				  from = index;
+				  next = x;
+				  return prefix;
+			  }
+		  }
+	  }
+	  
+	  @Override
+	  public long estimateSize() {
+		  return to - from;
+	  }
+	  
+	  @Override
+	  public int characteristics() {
+		  return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL;
+	  }
+	  
+	  @Override
+	  public Comparator<? super Integer> getComparator() {
+		  return null; // the natural order of the keys
+	  }
+  }
+  
+  
+  /**
+   * public int keysInto(int[] dst, int offset, int fromRank)
+   *
+   * copies the keys with indices fromRank, fromRank+1, ... in keysToArray() into dst,
+   * starting at dst[offset], until dst is full or the keys end.
+   * The first key is found with one descent by the subtree sizes, and nothing is allocated.
+   * Returns the number of keys that were copied, 0 if fromRank >= size().
+   */
+  public int keysInto(int[] dst, int offset, int fromRank)
+  {
+	  if (offset < 0 || offset > dst.length || fromRank < 0)
+		  throw new IndexOutOfBoundsException("offset " + offset + ", fromRank " + fromRank);
+	  if (fromRank >= this.size())
+		  return 0;
+	  int i = offset;
+	  for (AVLNode n = selectNode(fromRank); n != null && i < dst.length; n = successor(n))
+		  dst[i++] = n.getKey();
+	  return i - offset;
+  }
+  
+  
+  /**
+   * public int infoInto(String[] dst, int offset, int fromRank)
+   *
+   * copies the infos of the keys with indices fromRank, fromRank+1, ... in keysToArray() into dst,
+   * as keysInto does.
+   * Returns the number of infos that were copied, 0 if fromRank >= size().
+   */
+  public int infoInto(String[] dst, int offset, int fromRank)
+  {
+	  if (offset < 0 || offset > dst.length || fromRank < 0)
+		  throw new IndexOutOfBoundsException("offset " + offset + ", fromRank " + fromRank);
+	  if (fromRank >= this.size())
+		  return 0;
+	  int i = offset;
+	  for (AVLNode n = selectNode(fromRank); n != null && i < dst.length; n = successor(n))
+		  dst[i++] = n.getValue();
+	  return i - offset;
+  }
+  
+  
   /**
    * public String[] infoToArray()
    *
@@ -613,24 +1565,108 @@ public class AVLTree {
    */
   public String[] infoToArray()
   {
-	  IAVLNode[] nodesArr = nodesToArray();
 	  String[] arr = new String[this.size()];
-	  for (int i=0; i<arr.length; i++)
-		  arr[i] = nodesArr[i].getValue();
+	  int i = 0;
+	  for (AVLNode n = firstNode(); n != null; n = successor(n))
+		  arr[i++] = n.getValue();
 	  return arr;
   }
 
   /**
-   * private AVLNode clone(AVLNode n)
+   * public int[] keysToArrayParallel()
    *
-   * gets a node and a returns a clone node that has the node's key, value and height, without parent and children
+   * Returns the same array as keysToArray(), filled on the current or the common fork-join pool:
+   * the offset of every subtree in the array is known from the sizes,
+   * so the subtrees of every large enough node are exported by different tasks.
    */
-  private AVLNode clone(AVLNode n) {
-	  AVLNode res = new AVLNode(n.getKey(), n.getValue());
-	  res.setHeight(n.getHeight());
-	  return res;
-  }   
-   
+  public int[] keysToArrayParallel()
+  {
+	  int[] arr = new int[this.size()];
+	  if (this.root != null)
+		  invokeExport(new ExportTask((AVLNode)this.root, 0, arr, null));
+	  return arr;
+  }
+  
+  
+  /**
+   * public String[] infoToArrayParallel()
+   *
+   * Returns the same array as infoToArray(), filled on the current or the common fork-join pool
+   * like keysToArrayParallel().
+   */
+  public String[] infoToArrayParallel()
+  {
+	  String[] arr = new String[this.size()];
+	  if (this.root != null)
+		  invokeExport(new ExportTask((AVLNode)this.root, 0, null, arr));
+	  return arr;
+  }
+  
+  
+  /**
+   * private static void invokeExport(ExportTask task)
+   *
+   * runs the task on the current fork-join pool when called from one, so the caller
+   * chooses the parallelism, and on the common pool otherwise.
+   */
+  private static void invokeExport(ExportTask task)
+  {
+	  if (ForkJoinTask.inForkJoinPool())
+		  task.invoke();
+	  else
+		  ForkJoinPool.commonPool().invoke(task);
+  }
+  
+  
+  /**
+   * private class ExportTask
+   *
+   * writes the keys (or infos) of a subtree into an array from a given offset,
+   * forking the left subtree while the subtree has at least PARALLEL_EXPORT_THRESHOLD nodes.
+   */
+  @SuppressWarnings("serial")
+  private class ExportTask extends RecursiveAction {
+	  private final AVLNode n;
+	  private final int offset;
+	  private final int[] keys; // null when the infos are exported
+	  private final String[] infos; // null when the keys are exported
+	  
+	  ExportTask(AVLNode n, int offset, int[] keys, String[] infos) {
+		  this.n = n;
+		  this.offset = offset;
+		  this.keys = keys;
+		  this.infos = infos;
+	  }
+	  
+	  @Override
+	  protected void compute() {
+		  if (n.getSize() < PARALLEL_EXPORT_THRESHOLD) {
+			  AVLNode cur = n;
+			  while (cur.getLeft().getKey() != -1) // the subtree's minimum
+				  cur = (AVLNode)cur.getLeft();
+			  for (int i = offset; i < offset + n.getSize(); i++) { // the successors stay in the subtree
+				  if (keys != null)
+					  keys[i] = cur.getKey();
+				  else
+					  infos[i] = cur.getValue();
+				  cur = successor(cur);
+			  }
+			  return;
+		  }
+		  AVLNode left = (AVLNode)n.getLeft(); // both children are real, the subtree is large
+		  int mid = offset + left.getSize(); // n's index
+		  ExportTask leftTask = new ExportTask(left, offset, keys, infos);
+		  leftTask.fork();
+		  if (keys != null)
+			  keys[mid] = n.getKey();
+		  else
+			  infos[mid] = n.getValue();
+		  new ExportTask((AVLNode)n.getRight(), mid + 1, keys, infos).compute();
+		  leftTask.join();
+	  }
+  }
+  
+  
      /**
     * public string split(int x)
     *
@@ -641,64 +1677,544 @@ public class AVLTree {
     */   
    public AVLTree[] split(int x)
    {
-	   AVLTree T1 = new AVLTree(); // tree with smaller keys
-	   AVLTree T2 = new AVLTree(); // tree with bigger keys
-	   AVLTree temp = new AVLTree();
+	   return splitAround(x, false);
+   }
+   
+   /**
+    * public AVLTree[] splitAt(int x)
+    *
+    * splits the tree into 2 trees according to the key x, in one pass down and up x's search path.
+    * Returns an array [t1, t2] with two AVL trees. keys(t1) < x <= keys(t2),
+    * an item with key x is kept as the minimum of t2.
+    * x doesn't have to be in the tree, and the tree might be empty.
+    */
+   public AVLTree[] splitAt(int x)
+   {
+	   return splitAround(x, true);
+   }
+   
+   /**
+    * private AVLTree[] splitAround(int x, boolean keep)
+    *
+    * splits the tree into 2 trees according to the key x, as split does,
+    * but x doesn't have to be in the tree and the tree might be empty.
+    * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2), x itself is dropped
+    * unless keep is true, then its node is joined to t2.
+    */
+   private AVLTree[] splitAround(int x, boolean keep)
+   {
+	   AVLTree T1 = emptyLike(); // tree with smaller keys
+	   AVLTree T2 = emptyLike(); // tree with bigger keys
+	   AVLTree context = context(); // hosts the rotations of the joins
+	   AVLNode[] parts = new AVLNode[2];
+	   AVLNode n = context.splitRoots(subtreeRoot(this.root), x, parts); // the ancestors of x are the join nodes
+	   if (n != null && keep) { // n is smaller than all of t2's keys, it goes down its left spine
+		   context.joinRoots(VIRTUAL_LEAF, n, parts[1]);
+		   parts[1] = (AVLNode)context.root;
+	   }
+	   T1.setRoot(parts[0]);
+	   T2.setRoot(parts[1]);
+	   T1.resetCachedNodes(); // the extremes next to x are at the ends of the new spines
+	   T2.resetCachedNodes();
+	   AVLTree[] result = {T1,T2}; 
+	   if (n != null && !keep)
+		   recycle(n); // the only node that isn't in a part
+	   T2.poolCapacity = this.poolCapacity; // the parts keep the pool, the kept nodes go to t1
+	   movePool(T1);
+	   return result;
+   }
+   
+   /**
+    * private AVLNode splitRoots(AVLNode root, int x, AVLNode[] parts)
+    *
+    * splits the detached subtree of root (the virtual leaf if it is empty) around the key x, without tree objects:
+    * sets parts[0] to the root of the smaller keys and parts[1] to the root of the bigger keys,
+    * the virtual leaf for an empty part. The ancestors of x's place are detached and used as the join nodes,
+    * the tree only hosts the rotations of the joins and its root is overwritten.
+    * Returns the node with key x, detached from both parts, or null if there is none.
+    */
+   private AVLNode splitRoots(AVLNode root, int x, AVLNode[] parts) {
+	   AVLNode left = VIRTUAL_LEAF; // the part with smaller keys
+	   AVLNode right = VIRTUAL_LEAF; // the part with bigger keys
+	   AVLNode parent = null; // the parent of x's node or place
+	   boolean rightChild = false; // whether x's node or place is parent's right child
+	   AVLNode n = root;
+	   while (n.getKey() != -1 && n.getKey() != x) {
+		   parent = n;
+		   rightChild = x > n.getKey();
+		   n = (AVLNode)(rightChild ? n.getRight() : n.getLeft());
+	   }
+	   AVLNode found = null;
+	   if (n.getKey() != -1) {
+		   found = n;
+		   left = subtreeRoot(n.getLeft());
+		   right = subtreeRoot(n.getRight());
+	   }
+	   
+	   while (parent != null) {
+		   AVLNode y = parent; // detached and relinked by the join
+		   parent = (AVLNode)y.getParent();
+		   boolean fromRight = rightChild;
+		   rightChild = parent != null && parent.getRight() == y;
+		   if (fromRight) { // if we came from a right child
+			   joinRoots(subtreeRoot(y.getLeft()), y, left);
+			   left = (AVLNode)this.root;
+		   }
+		   else { // if we came from a left child
+			   joinRoots(right, y, subtreeRoot(y.getRight()));
+			   right = (AVLNode)this.root;
+		   }
+	   }
+	   parts[0] = left;
+	   parts[1] = right;
+	   return found;
+   }
+   
+   /**
+    * private static AVLNode subtreeRoot(IAVLNode n)
+    *
+    * detaches n from its parent and returns it as the root of a subtree,
+    * the virtual leaf if n is null (the root of an empty tree) or the virtual leaf.
+    */
+   private static AVLNode subtreeRoot(IAVLNode n) {
+	   if (n == null)
+		   return VIRTUAL_LEAF;
+	   n.setParent(null); // the virtual leaf ignores it
+	   return (AVLNode)n;
+   }
+   
+   /**
+    * private void setRoot(IAVLNode n)
+    *
+    * sets the subtree of n as the tree, the tree is empty if n is the virtual leaf.
+    */
+   private void setRoot(IAVLNode n) {
+	   this.root = (n.getKey() == -1) ? null : n;
+   }
+   
+   
+   /**
+    * private int insertSorted(AVLNode a, int[] keys, String[] infos, int from, int to)
+    *
+    * adds the sorted distinct items of keys[from..to) to the detached subtree of a (the virtual leaf if empty)
+    * by a union of the subtree with the batch, and sets the root of the result as the tree's root:
+    * the batch is split around a's key by a binary search, each half is added to a subtree of a
+    * recursively, and the results are joined back with a. Only nodes move, the tree only hosts the rotations
+    * and creates the new nodes. keys that are already in the subtree keep the subtree's info.
+    * Returns the number of rebalancing operations that were taken by the joins.
+    */
+   private int insertSorted(AVLNode a, int[] keys, String[] infos, int from, int to) {
+	   if (from == to) {
+		   this.root = a;
+		   return 0;
+	   }
+	   if (a.getKey() == -1) {
+		   this.root = buildSorted(keys, infos, from, to);
+		   this.root.setParent(null);
+		   return 0;
+	   }
+	   if (to - from == 1) { // a single descent is cheaper than detaching and joining the path
+		   this.root = a;
+		   return Math.max(insert(keys[from], infos[from]), 0);
+	   }
+	   int i = Arrays.binarySearch(keys, from, to, a.getKey());
+	   int mid = (i >= 0) ? i : -i - 1; // keys[from..mid) are smaller than a's key
+	   int next = (i >= 0) ? i + 1 : mid; // the batch item with a's key is skipped
 	   
-	   AVLNode n = treePosition(x); // finding x's node
-	   if (n.getLeft().getKey() != -1) {
-		   T1.root = n.getLeft(); // Initialising the smaller tree
-		   T1.root.setParent(null);
+	   AVLNode right = subtreeRoot(a.getRight());
+	   int num = insertSorted(subtreeRoot(a.getLeft()), keys, infos, from, mid);
+	   AVLNode left = (AVLNode)this.root;
+	   num += insertSorted(right, keys, infos, next, to);
+	   return num + joinRoots(left, a, (AVLNode)this.root);
+   }
+   
+   
+   /**
+    * public int insertAll(int[] keys, String[] infos)
+    *
+    * inserts the items (keys[i], infos[i]) into the tree, in any order.
+    * keys that are already in the tree are skipped, as insert does, and if a key
+    * appears more than once in keys only its first item is inserted.
+    * The batch is sorted first. A batch with at least as many distinct keys as the tree has items
+    * is merged with the tree's items and the tree is rebuilt in O(n + m), a smaller batch is added by
+    * a split and join union in O(m*log(n/m + 1)). New nodes are taken from the node pool, and a rebuild
+    * puts the tree's old nodes in the pool first.
+    * returns the number of rebalancing operations that were taken by the union's joins. A rebuild takes
+    * none and returns 0, the number of inserted items is then the growth of size().
+    * precondition: keys.length == infos.length, keys are not -1
+    */
+   public int insertAll(int[] keys, String[] infos) {
+	   if (keys.length != infos.length)
+		   throw new IllegalArgumentException("keys and infos must have the same length");
+	   
+	   long[] order = new long[keys.length]; // key in the high bits, index in the low bits
+	   for (int i = 0; i < keys.length; i++) {
+		   if (keys[i] == -1)
+			   throw new IllegalArgumentException("key -1 is reserved");
+		   order[i] = ((long)keys[i] << 32) | i;
 	   }
-	   if (n.getRight().getKey() != -1) {
-		   T2.root = n.getRight(); // Initialising the bigger tree
-		   T2.root.setParent(null);
+	   Arrays.sort(order); // by key, and by index for equal keys
+	   
+	   int m = 0; // number of distinct keys in the batch
+	   int[] batchKeys = new int[keys.length];
+	   String[] batchInfos = new String[keys.length];
+	   for (long o : order) {
+		   int k = (int)(o >>> 32);
+		   if (m > 0 && batchKeys[m-1] == k)
+			   continue; // the first item of k is kept
+		   batchKeys[m] = k;
+		   batchInfos[m] = infos[(int)o];
+		   m++;
 	   }
+	   if (m == 0)
+		   return 0;
 	   
-	   AVLNode cur = n;
-	   while (cur.getParent() != null) {
-		   if (cur.getParent().getRight() == cur) {// if cur is a right child			   
-			   temp.root = cur.getParent().getLeft();
-			   temp.root.setParent(null);
-			   if (temp.root.getKey() == -1)
-				   temp.root = null;
-			   AVLNode y = clone((AVLNode)cur.getParent());
-			   T1.join(y, temp);
+	   int n = this.size();
+	   if (m >= n) { // the union's joins stay cheaper than copying the whole tree until the batch is as large
+		   mergeRebuild(batchKeys, batchInfos, m);
+		   resetCachedNodes();
+		   return 0;
+	   }
+	   AVLTree context = context(); // hosts the rotations
+	   movePool(context); // the new nodes come from the tree's pool
+	   int num = context.insertSorted(subtreeRoot(this.root), batchKeys, batchInfos, 0, m);
+	   setRoot(context.root);
+	   resetCachedNodes(); // the subtrees were joined back from parts
+	   context.movePool(this);
+	   return num;
+   }
+   
+   
+   /**
+    * private void mergeRebuild(int[] batchKeys, String[] batchInfos, int m)
+    *
+    * merges the first m sorted distinct batch items with the items of the tree,
+    * keeping the tree's info for keys in both, and rebuilds the tree as perfectly balanced.
+    * The old nodes are recycled before the rebuild, so a pooled tree reuses them.
+    */
+   private void mergeRebuild(int[] batchKeys, String[] batchInfos, int m) {
+	   int[] mergedKeys = new int[this.size() + m];
+	   String[] mergedInfos = new String[this.size() + m];
+	   AVLNode n = firstNode(); // the tree's nodes are walked in order
+	   int j = 0, len = 0;
+	   while (n != null || j < m) {
+		   if (j == m || (n != null && n.getKey() <= batchKeys[j])) {
+			   if (j < m && n.getKey() == batchKeys[j])
+				   j++; // the tree's item wins
+			   mergedKeys[len] = n.getKey();
+			   mergedInfos[len] = n.getValue();
+			   n = successor(n);
 		   }
-		   else { // if cur is a left child
-			   temp.root = cur.getParent().getRight();
-			   temp.root.setParent(null);
-			   if (temp.root.getKey() == -1)
-				   temp.root = null;
-			   AVLNode y = clone((AVLNode)cur.getParent());
-			   T2.join(y, temp);
+		   else {
+			   mergedKeys[len] = batchKeys[j];
+			   mergedInfos[len] = batchInfos[j];
+			   j++;
 		   }
-		   cur = (AVLNode)cur.getParent();
+		   len++;
 	   }
-	   T1.rebalanceInsert((AVLNode)n.getLeft().getParent());
-	   T2.rebalanceInsert((AVLNode)n.getRight().getParent());
-	   AVLTree[] result = {T1,T2}; 
-	   return result;
+	   recycleSubtree(subtreeRoot(this.root));
+	   this.root = buildSorted(mergedKeys, mergedInfos, 0, len);
+	   this.root.setParent(null);
+   }
+   
+   /**
+    * public void union(AVLTree t)
+    *
+    * adds the items of t to the tree, keys that are in both trees keep the tree's info.
+    * The nodes of t are reused, so t is empty afterwards.
+    * Runs in O(m*log(n/m + 1)) where m <= n are the sizes of the trees.
+    */
+   public void union(AVLTree t) {
+	   union(t, null, Integer.MAX_VALUE);
+   }
+   
+   
+   /**
+    * public void union(AVLTree t, ForkJoinPool pool, int threshold)
+    *
+    * as union(t), the two halves of every split with at least threshold items
+    * in both trees together are united in parallel on the given pool.
+    */
+   public void union(AVLTree t, ForkJoinPool pool, int threshold) {
+	   if (t == this)
+		   return;
+	   runSetOperation(t, 'u', pool, threshold);
    }
    
+   
+   /**
+    * public void intersection(AVLTree t)
+    *
+    * removes from the tree the keys that are not in t.
+    * The nodes of t are reused, so t is empty afterwards.
+    * Runs in O(m*log(n/m + 1)) where m <= n are the sizes of the trees.
+    */
+   public void intersection(AVLTree t) {
+	   intersection(t, null, Integer.MAX_VALUE);
+   }
+   
+   
+   /**
+    * public void intersection(AVLTree t, ForkJoinPool pool, int threshold)
+    *
+    * as intersection(t), the two halves of every split with at least threshold items
+    * in both trees together are intersected in parallel on the given pool.
+    */
+   public void intersection(AVLTree t, ForkJoinPool pool, int threshold) {
+	   if (t == this)
+		   return;
+	   runSetOperation(t, 'i', pool, threshold);
+   }
+   
+   
    /**
-    * private AVLNode findRankEquiv(AVLTree tree, int rank)
+    * public void difference(AVLTree t)
     *
-    * gets a tree and a rank returns the first left node whose rank is less or equals to given rank.
+    * removes from the tree the keys that are in t.
+    * The nodes of t are reused, so t is empty afterwards.
+    * Runs in O(m*log(n/m + 1)) where m <= n are the sizes of the trees.
     */
-   private AVLNode findRankEquiv(AVLTree tree, int rank, char d) {
-	  AVLNode curr;
+   public void difference(AVLTree t) {
+	   difference(t, null, Integer.MAX_VALUE);
+   }
+   
+   
+   /**
+    * public void difference(AVLTree t, ForkJoinPool pool, int threshold)
+    *
+    * as difference(t), the two halves of every split with at least threshold items
+    * in both trees together are subtracted in parallel on the given pool.
+    */
+   public void difference(AVLTree t, ForkJoinPool pool, int threshold) {
+	   if (t == this) {
+		   recycleSubtree(subtreeRoot(this.root));
+		   this.root = null;
+		   this.resetCachedNodes();
+		   return;
+	   }
+	   runSetOperation(t, 'd', pool, threshold);
+   }
+   
+   
+   /**
+    * private void runSetOperation(AVLTree t, char op, ForkJoinPool pool, int threshold)
+    *
+    * runs setOperation on the roots of the tree and t, on the pool or on the current thread
+    * if pool is null, and empties t. t is rebuilt first if its augmentation differs
+    * or it is a weak tree and the tree isn't.
+    */
+   private void runSetOperation(AVLTree t, char op, ForkJoinPool pool, int threshold) {
+	   if (t.augmentation != this.augmentation)
+		   t.setAugmentation(this.augmentation); // t's nodes are moved into the tree
+	   if (t.weak && !this.weak)
+		   t.setWeak(false);
+	   AVLNode a = subtreeRoot(this.root);
+	   AVLNode b = subtreeRoot(t.root);
+	   AVLTree context = context(); // hosts the rotations
+	   movePool(context); // the dropped nodes go to the tree's pool
+	   if (pool == null)
+		   context.setOperation(a, b, op, threshold, new AVLNode[2]);
+	   else
+		   context.root = pool.invoke(new SetOperationTask(context, a, b, op, threshold));
+	   setRoot(context.root);
+	   this.resetCachedNodes(); // the result was joined back from parts
+	   context.movePool(this);
+	   t.root = null;
+	   t.resetCachedNodes();
+   }
+   
+   
+   /**
+    * private void setOperation(AVLNode a, AVLNode b, char op, int threshold, AVLNode[] parts)
+    *
+    * applies union (op 'u'), intersection ('i') or difference ('d') of the detached subtree of b
+    * to the detached subtree of a (either might be the virtual leaf), and sets the root of the result as the tree's root:
+    * splits b around a's key, applies the operation to each part and a subtree of a recursively,
+    * and joins the results back, with a if its key belongs to the result.
+    * Only nodes move, the tree only hosts the rotations and parts holds the roots of each split,
+    * and the nodes that are dropped from the result are recycled to the tree's pool.
+    * The recursive calls are forked, each with a tree of its own, when both subtrees have at least
+    * threshold items together, so the method must run in a fork-join pool unless threshold is Integer.MAX_VALUE.
+    * The forked trees have no pool, their dropped nodes are left to the GC.
+    */
+   private void setOperation(AVLNode a, AVLNode b, char op, int threshold, AVLNode[] parts) {
+	   if (a.getKey() == -1) {
+		   if (op != 'u')
+			   recycleSubtree(b);
+		   this.root = (op == 'u') ? b : VIRTUAL_LEAF;
+		   return;
+	   }
+	   if (b.getKey() == -1) {
+		   if (op == 'i')
+			   recycleSubtree(a);
+		   this.root = (op == 'i') ? VIRTUAL_LEAF : a;
+		   return;
+	   }
+	   if (b.getSize() == 1) { // a single descent is cheaper than splitting and joining the path
+		   setOperationItem(a, b, op);
+		   return;
+	   }
+	   boolean parallel = (long)a.getSize() + b.getSize() >= threshold;
+	   AVLNode same = splitRoots(b, a.getKey(), parts); // b's item with a's key is dropped
+	   boolean found = same != null;
+	   if (found)
+		   recycle(same);
+	   AVLNode bLeft = parts[0];
+	   AVLNode bRight = parts[1];
+	   AVLNode aLeft = subtreeRoot(a.getLeft());
+	   AVLNode aRight = subtreeRoot(a.getRight());
+	   AVLNode left;
+	   if (parallel) {
+		   SetOperationTask leftTask = new SetOperationTask(context(), aLeft, bLeft, op, threshold);
+		   leftTask.fork();
+		   setOperation(aRight, bRight, op, threshold, parts);
+		   left = leftTask.join();
+	   }
+	   else {
+		   setOperation(aLeft, bLeft, op, threshold, parts);
+		   left = (AVLNode)this.root;
+		   setOperation(aRight, bRight, op, threshold, parts);
+	   }
+	   AVLNode right = (AVLNode)this.root;
+	   
+	   boolean keepRoot = (op == 'u') || (op == 'i' && found) || (op == 'd' && !found);
+	   if (keepRoot)
+		   joinRoots(left, a, right);
+	   else {
+		   joinRoots(left, right);
+		   recycle(a);
+	   }
+   }
+   
+   
+   /**
+    * private void setOperationItem(AVLNode a, AVLNode b, char op)
+    *
+    * applies setOperation of the single node b to the detached subtree of a by one descent:
+    * b is inserted (union), a's node with b's key is kept alone (intersection) or deleted (difference).
+    * The dropped nodes are recycled.
+    */
+   private void setOperationItem(AVLNode a, AVLNode b, char op) {
+	   this.root = a;
+	   if (op == 'u') {
+		   if (insertNode(b) == -1) // b is dropped if a has its key
+			   recycle(b);
+		   return;
+	   }
+	   AVLNode n = a;
+	   while (n.getKey() != -1 && n.getKey() != b.getKey())
+		   n = (AVLNode)(b.getKey() < n.getKey() ? n.getLeft() : n.getRight());
+	   if (op == 'd') {
+		   if (n.getKey() != -1) {
+			   deleteNode(n);
+			   recycle(n);
+		   }
+		   this.root = subtreeRoot(this.root);
+	   }
+	   else if (n.getKey() == -1) {
+		   recycleSubtree(a);
+		   this.root = VIRTUAL_LEAF;
+	   }
+	   else {
+		   AVLNode left = (AVLNode)n.getLeft();
+		   AVLNode right = (AVLNode)n.getRight();
+		   if (n != a) { // n is cut off before the rest of a is recycled
+			   AVLNode p = (AVLNode)n.getParent();
+			   if (p.getLeft() == n)
+				   p.setLeft(VIRTUAL_LEAF);
+			   else
+				   p.setRight(VIRTUAL_LEAF);
+			   recycleSubtree(a);
+		   }
+		   recycleSubtree(left);
+		   recycleSubtree(right);
+		   n.setLeft(VIRTUAL_LEAF); // n is the whole result
+		   n.setRight(VIRTUAL_LEAF);
+		   n.setParent(null);
+		   n.setHeight(0);
+		   n.setSize(1);
+		   if (this.augmentation != null)
+			   updateAggregate(n);
+		   this.root = n;
+	   }
+	   recycle(b); // the nodes of the result are a's
+   }
+   
+   
+   /**
+    * private static class SetOperationTask
+    *
+    * applies setOperation of b to a as a fork-join task on the given tree, and returns the root of the result.
+    */
+   @SuppressWarnings("serial")
+   private static class SetOperationTask extends RecursiveTask<AVLNode> {
+	   private final AVLTree context;
+	   private final AVLNode a;
+	   private final AVLNode b;
+	   private final char op;
+	   private final int threshold;
+	   
+	   SetOperationTask(AVLTree context, AVLNode a, AVLNode b, char op, int threshold) {
+		   this.context = context;
+		   this.a = a;
+		   this.b = b;
+		   this.op = op;
+		   this.threshold = threshold;
+	   }
+	   
+	   @Override
+	   protected AVLNode compute() {
+		   context.setOperation(a, b, op, threshold, new AVLNode[2]);
+		   return (AVLNode)context.root;
+	   }
+   }
+   
+   
+   /**
+    * private int joinRoots(AVLNode l, AVLNode r)
+    *
+    * joins the detached subtrees of l and r without a middle node, as joinRoots(l, x, r) does:
+    * the minimum of r is deleted from r and used as the middle node.
+    * precondition: keys(l) < keys(r)
+    */
+   private int joinRoots(AVLNode l, AVLNode r) {
+	   if (r.getKey() == -1) {
+		   this.root = l;
+		   return 0;
+	   }
+	   AVLNode m = r;
+	   while (m.getLeft().getKey() != -1)
+		   m = (AVLNode)m.getLeft();
+	   this.root = r;
+	   int num = deleteNode(m); // m has no left child, so m itself is unlinked
+	   return num + joinRoots(l, m, subtreeRoot(this.root));
+   }
+   
+
+   /**
+    * private AVLNode findRankEquiv(AVLNode root, int rank, char d)
+    *
+    * gets the root of a subtree and a rank, walks down the left (or right) spine of the subtree
+    * and returns the parent of the first node whose rank is less or equals to given rank,
+    * or null if the root's rank is already less or equals to given rank.
+    * the parent is returned since the first node might be the virtual leaf, which has no parent.
+    */
+   private AVLNode findRankEquiv(AVLNode root, int rank, char d) {
+	  AVLNode curr = root;
+	  AVLNode parent = null;
 	  if (d == 'l') {
-		  curr = (AVLNode)tree.getRoot();
-		  while (curr.getHeight() > rank)
+		  while (curr.getHeight() > rank) {
+			  parent = curr;
 			  curr = (AVLNode)curr.getLeft();
+		  }
 	  }
 	  else {
-		   curr = (AVLNode)tree.getRoot();
-		  while (curr.getHeight() > rank)
+		  while (curr.getHeight() > rank) {
+			  parent = curr;
 			  curr = (AVLNode)curr.getRight();
+		  }
 	  }
-	  return curr;
+	  return parent;
    }
 
    
@@ -712,85 +2228,176 @@ public class AVLTree {
     */   
    public int join(IAVLNode x, AVLTree t) {
 	   int res = Math.abs(this.getRank() - t.getRank()) + 1;
-	   if (t.getRoot() == null && this.getRoot() == null) { // both trees are empty
-		   this.insert(x.getKey(), x.getValue());
-	   }
-	   if (t.getRoot() == null) { // t is empty
-		   this.insert(x.getKey(), x.getValue());
+	   if (this.augmentation != null && !(x instanceof AugmentedNode)) // x can't keep an aggregate
+		   x = newNode(x.getKey(), x.getValue());
+	   joinNode(x, t);
+	   return res;
+   }
+   
+   
+   /**
+    * private int joinNode(IAVLNode x, AVLTree t)
+    *
+    * joins t and x with the tree, as join does.
+    * Returns the number of rebalancing operations that were taken.
+    */
+   private int joinNode(IAVLNode x, AVLTree t) {
+	   int num = 0;
+	   if (t.augmentation != this.augmentation)
+		   t.setAugmentation(this.augmentation); // t's nodes are rebuilt to keep the tree's aggregate
+	   if (t.weak && !this.weak)
+		   t.setWeak(false); // t is rebuilt as an AVL tree
+	   if (t.getRoot() == null) { // t is empty, or both trees are
+		   num = this.insert(x.getKey(), x.getValue());
 	   }
 	   else if (this.getRoot() == null) { // this tree if empty
-		   t.insert(x.getKey(), x.getValue());
+		   num = t.insert(x.getKey(), x.getValue());
 		   this.root = t.root;
+		   this.minNode = t.minNode;
+		   this.maxNode = t.maxNode;
+		   this.lastTouched = t.lastTouched;
 	   }
 	   
 	   else { // none of the trees are empty
- 		   AVLNode y = (AVLNode)x;
-		   int thisKey = this.getRoot().getKey();
-		   int otherKey = t.getRoot().getKey();
-		   AVLTree leftTree;
-		   AVLTree rightTree;
-		   
-		   if (otherKey < thisKey) {// joining from left side
+		   AVLTree leftTree = this;
+		   AVLTree rightTree = t;
+		   if (t.getRoot().getKey() < this.getRoot().getKey()) { // joining from left side
 			   leftTree = t;
 			   rightTree = this;
+			   this.minNode = t.minNode;
 		   }
-		   else {// joining from right side
-			   leftTree = this;
-			   rightTree = t;
-		   }
+		   else // joining from right side
+			   this.maxNode = t.maxNode;
+		   num = joinRoots(subtreeRoot(leftTree.root), (AVLNode)x, subtreeRoot(rightTree.root));
+	   }
+	  return num;
+   }
+   
+   
+   /**
+    * private int joinRoots(AVLNode l, AVLNode x, AVLNode r)
+    *
+    * joins the detached subtrees of l and r (the virtual leaf if empty) with the node x between them,
+    * without tree objects, and sets the root of the result as the tree's root.
+    * x is linked from scratch, it might be a node of another subtree.
+    * Returns the number of rebalancing operations that were taken.
+    * precondition: keys(l) < x.key < keys(r)
+    */
+   private int joinRoots(AVLNode l, AVLNode x, AVLNode r) {
+	   int leftRank = l.getHeight();
+	   int rightRank = r.getHeight();
+	   if (leftRank <= rightRank) { // x goes down the left spine of r
+		   AVLNode c = findRankEquiv(r, leftRank, 'l');
+		   AVLNode b = (c == null) ? r : (AVLNode)c.getLeft();
+		   x.setHeight(leftRank + 1);
 		   
-		   AVLNode leftRoot = (AVLNode)leftTree.getRoot();
-		   AVLNode rightRoot = (AVLNode)rightTree.getRoot();
+		   x.setParent(c);
+		   if (c != null)
+			   c.setLeft(x);
 		   
-		   int leftRank = leftRoot.getHeight();
-		   int rightRank = rightRoot.getHeight(); 
+		   x.setRight(b);
+		   b.setParent(x);
 		   
-		   if (leftRank <= rightRank) {
-			   AVLNode b = findRankEquiv(rightTree, leftRank, 'l');
-			   y.setHeight(leftRank + 1);
-			   
-			   AVLNode c = (AVLNode)b.getParent();
-			   y.setParent(c);
-			   if (c != null)
-				   c.setLeft(y);
-			   
-			   y.setRight(b);
-			   b.setParent(y);
-			   
-			   y.setLeft(leftRoot);
-			   leftRoot.setParent(y);
-			   
-			   if (y.getParent() == null)
-				   this.root = y;
-			   else {
-				   this.root = rightRoot;
-				   this.root.setParent(null);
-			   }
-			   rebalanceInsert((AVLNode)y.getParent());
-		   }
+		   x.setLeft(l);
+		   l.setParent(x);
 		   
-		   else {
-			   AVLNode b = findRankEquiv(leftTree, rightRank, 'r');
-			   y.setHeight(rightRank + 1);
-			   
-			   AVLNode c = (AVLNode)b.getParent();
-			   y.setParent(c);
-			   if (c != null)
-				   c.setRight(y);
-			   
-			   y.setLeft(b);
-			   b.setParent(y);
-			   
-			   y.setRight(rightRoot);
-			   rightRoot.setParent(y);
-			   
-			   this.root = leftRoot;
-			   this.root.setParent(null);
-			   rebalanceInsert((AVLNode)y.getParent());
-		   }
+		   updateSize(x);
+		   this.root = (c == null) ? x : r;
+		   return rebalanceInsert(c, x.getSize() - b.getSize()); // x's subtree took b's place
+	   }
+	   else { // x goes down the right spine of l
+		   AVLNode c = findRankEquiv(l, rightRank, 'r');
+		   AVLNode b = (AVLNode)c.getRight(); // c isn't null since leftRank > rightRank
+		   x.setHeight(rightRank + 1);
+		   
+		   x.setParent(c);
+		   c.setRight(x);
+		   
+		   x.setLeft(b);
+		   b.setParent(x);
+		   
+		   x.setRight(r);
+		   r.setParent(x);
+		   
+		   updateSize(x);
+		   this.root = l;
+		   return rebalanceInsert(c, x.getSize() - b.getSize()); // x's subtree took b's place
 	   }
-	  updateSize((AVLNode)x); //updating the size attribute of the relevant nodes; 
-	  return res;
+   }
+
+   /**
+    * void checkInvariants()
+    *
+    * walks the whole tree and throws an IllegalStateException if it is broken: a key out of order,
+    * a wrong parent, size, height or aggregate, a 2,2 node outside a weak tree or a 2,2 leaf,
+    * a virtual leaf other than the shared one, or a wrong cached node.
+    * Runs in O(n), for InvariantTester.
+    */
+   void checkInvariants() {
+	   if (VIRTUAL_LEAF.getHeight() != -1 || VIRTUAL_LEAF.getSize() != 0 || VIRTUAL_LEAF.getParent() != null)
+		   throw new IllegalStateException("the virtual leaf was changed");
+	   AVLNode r = (this.root == null) ? VIRTUAL_LEAF : (AVLNode)this.root;
+	   if (this.root != null && (!r.isRealNode() || r.getParent() != null))
+		   throw new IllegalStateException("the root is virtual or has a parent");
+	   checkSubtree(r, null, Long.MIN_VALUE, Long.MAX_VALUE);
+	   AVLNode first = r;
+	   AVLNode last = r;
+	   while (first.getKey() != -1 && first.getLeft().getKey() != -1)
+		   first = (AVLNode)first.getLeft();
+	   while (last.getKey() != -1 && last.getRight().getKey() != -1)
+		   last = (AVLNode)last.getRight();
+	   if (this.minNode != ((this.root == null) ? null : first) || this.maxNode != ((this.root == null) ? null : last))
+		   throw new IllegalStateException("a kept extreme is not the minimum or the maximum");
+	   AVLNode n = r;
+	   while (this.lastTouched != null && n.getKey() != -1 && n.getKey() != this.lastTouched.getKey())
+		   n = (AVLNode)(this.lastTouched.getKey() < n.getKey() ? n.getLeft() : n.getRight());
+	   if (this.lastTouched != null && n != this.lastTouched)
+		   throw new IllegalStateException("the last touched node is not in the tree");
+	   int free = 0;
+	   for (AVLNode f = this.freeNodes; f != null; f = (AVLNode)f.getParent(), free++) {
+		   n = r;
+		   while (n.getKey() != -1 && n.getKey() != f.getKey())
+			   n = (AVLNode)(f.getKey() < n.getKey() ? n.getLeft() : n.getRight());
+		   if (n == f || f.getValue() != null || f.getLeft() != VIRTUAL_LEAF || f.getRight() != VIRTUAL_LEAF)
+			   throw new IllegalStateException("a pooled node is still in use");
+	   }
+	   if (free != this.freeCount || free > this.poolCapacity)
+		   throw new IllegalStateException("the pool holds " + free + " nodes, not " + this.freeCount);
+   }
+   
+   /**
+    * private void checkSubtree(AVLNode n, AVLNode parent, long lo, long hi)
+    *
+    * checks the subtree of n for checkInvariants, its keys must be between lo and hi.
+    */
+   private void checkSubtree(AVLNode n, AVLNode parent, long lo, long hi) {
+	   if (!n.isRealNode()) {
+		   if (n != VIRTUAL_LEAF)
+			   throw new IllegalStateException("a virtual leaf other than the shared one");
+		   return;
+	   }
+	   int k = n.getKey();
+	   if (n.getParent() != parent)
+		   throw new IllegalStateException("wrong parent of " + k);
+	   if (k <= lo || k >= hi)
+		   throw new IllegalStateException("key " + k + " is out of order");
+	   AVLNode l = (AVLNode)n.getLeft();
+	   AVLNode r = (AVLNode)n.getRight();
+	   checkSubtree(l, n, lo, k);
+	   checkSubtree(r, n, k, hi);
+	   
+	   if (n.getSize() != l.getSize() + r.getSize() + 1)
+		   throw new IllegalStateException("wrong size of " + k);
+	   int leftDiff = n.getHeight() - l.getHeight();
+	   int rightDiff = n.getHeight() - r.getHeight();
+	   if (Math.min(leftDiff, rightDiff) < 1 || Math.max(leftDiff, rightDiff) > 2
+			   || (Math.min(leftDiff, rightDiff) == 2 && (!this.weak || n.getHeight() == 1))) // 2,2 only inside a weak tree
+		   throw new IllegalStateException("the rank rule doesn't hold at " + k);
+	   
+	   Augmentation a = this.augmentation;
+	   if (a != null && (!(n instanceof AugmentedNode) || ((AugmentedNode)n).value != a.value(k, n.getValue())
+			   || ((AugmentedNode)n).aggregate != a.combine(a.combine(aggregateOf(l), ((AugmentedNode)n).value), aggregateOf(r))))
+		   throw new IllegalStateException("wrong aggregate of " + k);
    }
 
 	/**
@@ -836,8 +2443,8 @@ public class AVLTree {
 	  		this.info = info;
 	  		if (key != -1) {
 	  			this.isReal = true;
-	  			this.setLeft(new AVLNode(-1, "")); // creates by default the left child as a virtual leaf
-	  			this.setRight(new AVLNode(-1, "")); // creates by default the right child as a virtual leaf
+	  			this.left = VIRTUAL_LEAF; // by default the left child is the shared virtual leaf
+	  			this.right = VIRTUAL_LEAF; // by default the right child is the shared virtual leaf
 	  			this.size = 1;
 	  		}
 	  			else {
@@ -857,7 +2464,8 @@ public class AVLTree {
 		}
 		public void setLeft(IAVLNode node)
 		{
-			this.left = node;
+			if (this.isReal) // the virtual leaf is shared, so it is never changed
+				this.left = node;
 		}
 		public IAVLNode getLeft()
 		{
@@ -865,7 +2473,8 @@ public class AVLTree {
 		}
 		public void setRight(IAVLNode node)
 		{
-			this.right = node;
+			if (this.isReal) // the virtual leaf is shared, so it is never changed
+				this.right = node;
 		}
 		public IAVLNode getRight()
 		{
@@ -873,7 +2482,8 @@ public class AVLTree {
 		}
 		public void setParent(IAVLNode node)
 		{
-			this.parent = node;
+			if (this.isReal) // the virtual leaf is shared, so it is never changed
+				this.parent = node;
 		}
 		public IAVLNode getParent()
 		{
@@ -886,7 +2496,8 @@ public class AVLTree {
 		}
 	    public void setHeight(int height)
 	    {
-	    	this.height = height;
+	    	if (this.isReal) // the virtual leaf is shared, so it is never changed
+	    		this.height = height;
 	    }
 	    public int getHeight()
 	    {
@@ -894,12 +2505,27 @@ public class AVLTree {
 	    }
 	    public void setSize(int size)
 	    {
-	    	this.size = size;
+	    	if (this.isReal) // the virtual leaf is shared, so it is never changed
+	    		this.size = size;
 	    }
 	    public int getSize()
 	    {
 	    	return this.size;
 	    }
   }
+  
+  /**
+   * private class AugmentedNode
+   *
+   * a node of an augmented tree, which also keeps the aggregate of its subtree.
+   */
+  private class AugmentedNode extends AVLNode {
+	  private long value; // the value of the node's item, computed once
+	  private long aggregate; // the aggregate of the values in the node's subtree
+	  
+	  AugmentedNode(int key, String info) {
+		  super(key, info);
+	  }
+  }
 
 }
\ No newline at end of file
@@ -0,0 +1,822 @@
+import java.util.Arrays;
+
+/**
+ *
+ * ArrayAVLTree
+ *
+ * An implementation of an AVL Tree with distinct integer keys and info,
+ * with the same operations as AVLTree.
+ * Instead of AVLNode objects, the nodes are indices into parallel arrays
+ * (key, left, right, parent, diffs, size and info) of a NodePool.
+ * A node doesn't keep its rank, only two bits that tell whether the rank difference
+ * to each child is 1 or 2, and the tree keeps the rank of its root.
+ * Index 0 is the virtual leaf. Key -1 is reserved, as it is the key of AVLTree's virtual leaf,
+ * any other int can be used as a key.
+ * Trees created by split share the pool of the tree they were split from,
+ * deleted nodes are kept in a free list and reused by the next insert.
+ * Joining a tree with another pool copies its nodes to this tree's pool.
+ *
+ */
+
+public class ArrayAVLTree {
+	static final int NIL = 0; // the index of the virtual leaf
+	
+	// the bits of NodePool.diffs, set when the rank difference to the left (right) child is 2, clear when it is 1
+	static final byte LEFT_TWO = 1;
+	static final byte RIGHT_TWO = 2;
+
+	private final NodePool pool;
+	private int root;
+	private int rank = -1; // the rank of the root, -1 if the tree is empty
+
+
+	/**
+	 * public ArrayAVLTree()
+	 *
+	 * constructs an empty ArrayAVLTree with its own node pool
+	 */
+	public ArrayAVLTree() {
+		this(new NodePool(16));
+	}
+
+	private ArrayAVLTree(NodePool pool) {
+		this.pool = pool;
+		this.root = NIL;
+	}
+
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == NIL;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return this.pool.size[this.root]; // the virtual leaf's size is 0
+	}
+
+	/**
+	 * public int getRank()
+	 *
+	 * Returns the rank of the tree, -1 if the tree is empty.
+	 */
+	public int getRank() {
+		return this.rank;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		if (this.root == NIL)
+			return null;
+		int[] left = this.pool.left;
+		int node = this.root;
+		while (left[node] != NIL)  // stops on the virtual leaf's parent
+			node = left[node];
+		return this.pool.info[node];
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		if (this.root == NIL)
+			return null;
+		int[] right = this.pool.right;
+		int node = this.root;
+		while (right[node] != NIL)  // stops on the virtual leaf's parent
+			node = right[node];
+		return this.pool.info[node];
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		int node = treePosition(k);
+		if (node == NIL || this.pool.key[node] != k)
+			return null;
+		return this.pool.info[node];
+	}
+
+	/**
+	 * private int treePosition(int k)
+	 *
+	 * returns the node with the given key if it exists in the tree,
+	 * otherwise returns the parent of the place to insert the key (NIL if the tree is empty).
+	 */
+	private int treePosition(int k) {
+		int[] key = this.pool.key;
+		int[] left = this.pool.left;
+		int[] right = this.pool.right;
+		int x = this.root;
+		int y = NIL;
+		while (x != NIL) { // until encounters a virtual leaf
+			y = x;
+			if (k == key[x])
+				return x;
+			else if (k < key[x])
+				x = left[x];
+			else
+				x = right[x];
+		}
+		return y;
+	}
+
+	/**
+	 * private static byte two(boolean left)
+	 *
+	 * returns the bit of the rank difference to the left or to the right child.
+	 */
+	private static byte two(boolean left) {
+		return left ? LEFT_TWO : RIGHT_TWO;
+	}
+
+	/**
+	 * private int rankDiff(int n, boolean left)
+	 *
+	 * returns the rank difference between n and its left or right child, 1 or 2.
+	 */
+	private int rankDiff(int n, boolean left) {
+		return ((this.pool.diffs[n] & two(left)) != 0) ? 2 : 1;
+	}
+
+	/**
+	 * private int rankOf(int n)
+	 *
+	 * returns the rank of n by adding the rank differences down its left spine, -1 for the virtual leaf.
+	 */
+	private int rankOf(int n) {
+		int r = -1;
+		for (; n != NIL; n = this.pool.left[n])
+			r += rankDiff(n, true);
+		return r;
+	}
+
+	/**
+	 * private void updateSize(int n)
+	 *
+	 * recomputes the size of a single node from its children.
+	 */
+	private void updateSize(int n) {
+		NodePool p = this.pool;
+		p.size[n] = p.size[p.left[n]] + p.size[p.right[n]] + 1;
+	}
+
+	/**
+	 * private void addToSizes(int n, int delta)
+	 *
+	 * adds delta to the size of n and all its ancestors, for a join that needs no rebalancing.
+	 */
+	private void addToSizes(int n, int delta) {
+		int[] size = this.pool.size;
+		int[] parent = this.pool.parent;
+		while (n != NIL) {
+			size[n] += delta;
+			n = parent[n];
+		}
+	}
+
+	/**
+	 * private void replaceChild(int p, int oldChild, int newChild)
+	 *
+	 * sets newChild in the place of p's child oldChild, or as the root if p is NIL.
+	 */
+	private void replaceChild(int p, int oldChild, int newChild) {
+		NodePool pool = this.pool;
+		if (newChild != NIL)
+			pool.parent[newChild] = p;
+		if (p == NIL)
+			this.root = newChild;
+		else if (pool.left[p] == oldChild)
+			pool.left[p] = newChild;
+		else
+			pool.right[p] = newChild;
+	}
+
+	/**
+	 * private int rightRotate(int z)
+	 *
+	 * rotates the edge between z and its left child n, and fixes the sizes of both.
+	 * The method returns 1 for rotation
+	 */
+	private int rightRotate(int z) {
+		NodePool p = this.pool;
+		int n = p.left[z];
+		int b = p.right[n];
+		replaceChild(p.parent[z], z, n);
+		p.left[z] = b;
+		if (b != NIL)
+			p.parent[b] = z;
+		p.right[n] = z;
+		p.parent[z] = n;
+		p.size[n] = p.size[z];
+		updateSize(z);
+		return 1;
+	}
+
+	/**
+	 * private int leftRotate(int z)
+	 *
+	 * rotates the edge between z and its right child n, and fixes the sizes of both.
+	 * The method returns 1 for rotation
+	 */
+	private int leftRotate(int z) {
+		NodePool p = this.pool;
+		int n = p.right[z];
+		int b = p.left[n];
+		replaceChild(p.parent[z], z, n);
+		p.right[z] = b;
+		if (b != NIL)
+			p.parent[b] = z;
+		p.left[n] = z;
+		p.parent[z] = n;
+		p.size[n] = p.size[z];
+		updateSize(z);
+		return 1;
+	}
+
+	/**
+	 * private int rotateUp(int z, boolean left)
+	 *
+	 * rotates z's left or right child above z.
+	 * The method returns 1 for rotation
+	 */
+	private int rotateUp(int z, boolean left) {
+		return left ? rightRotate(z) : leftRotate(z);
+	}
+
+	/**
+	 * private int rebalanceInsert(int p, boolean left, int delta)
+	 *
+	 * rebalances the tree bottom up, starting at p whose left (or right) child's rank was raised by one,
+	 * and adds delta to the sizes on the way to the root, in the same pass.
+	 * The rank differences are read and written as the two bits of each node.
+	 * The method returns sum of rebalancing operations that were taken, counted as in AVLTree.
+	 */
+	private int rebalanceInsert(int p, boolean left, int delta) {
+		NodePool pool = this.pool;
+		byte[] diffs = pool.diffs;
+		int num = 0;
+		boolean balanced = false; // once true, only the sizes are updated
+		while (p != NIL) {
+			pool.size[p] += delta; // the sizes below p are up to date, so the rotations can use them
+			if (!balanced) {
+				byte side = two(left);
+				byte other = two(!left);
+				if ((diffs[p] & side) != 0) { // 2 becomes 1, p keeps its rank
+					diffs[p] &= ~side;
+					balanced = true;
+				}
+				else if ((diffs[p] & other) == 0) { // 0,1 needs promotion
+					diffs[p] = other;
+					num++;
+				}
+				else {
+					int c = left ? pool.left[p] : pool.right[p];
+					if ((diffs[c] & side) == 0 && (diffs[c] & other) != 0) { // c is 1,2 on the outer side, single rotation
+						diffs[p] = 0;
+						diffs[c] = 0;
+						num += 1 + rotateUp(p, left);
+						balanced = true;
+					}
+					else if ((diffs[c] & side) != 0) { // c is 2,1, double rotation
+						int g = left ? pool.right[c] : pool.left[c];
+						byte g2 = diffs[g];
+						diffs[c] = ((g2 & side) != 0) ? other : 0; // c takes g's child on the side of c
+						diffs[p] = ((g2 & other) != 0) ? side : 0; // p takes g's other child
+						diffs[g] = 0;
+						num += 3 + rotateUp(c, !left) + rotateUp(p, left);
+						c = g;
+						balanced = true;
+					}
+					else { // 1,1 can't follow an insertion, only a join, the rotated subtree grows
+						diffs[p] = other;
+						diffs[c] = side;
+						num += 1 + rotateUp(p, left);
+					}
+					p = c; // the root of the rotated subtree
+				}
+			}
+			int parent = pool.parent[p];
+			if (parent == NIL && !balanced) // the root's rank was raised
+				this.rank++;
+			left = pool.left[parent] == p;
+			p = parent;
+		}
+		return num;
+	}
+
+	/**
+	 * private int rebalanceDelete(int p, boolean left)
+	 *
+	 * rebalances the tree bottom up, starting at p whose left (or right) child's rank was lowered by one,
+	 * and subtracts one from the sizes on the way to the root, in the same pass.
+	 * The method returns sum of rebalancing operations that were taken, counted as in AVLTree.
+	 */
+	private int rebalanceDelete(int p, boolean left) {
+		NodePool pool = this.pool;
+		byte[] diffs = pool.diffs;
+		int num = 0;
+		boolean balanced = false; // once true, only the sizes are updated
+		while (p != NIL) {
+			pool.size[p]--; // the sizes below p are up to date, so the rotations can use them
+			if (!balanced) {
+				byte side = two(left);
+				byte other = two(!left);
+				if ((diffs[p] & side) == 0) { // 1 becomes 2
+					if ((diffs[p] & other) == 0) { // 2,1, p keeps its rank
+						diffs[p] |= side;
+						balanced = true;
+					}
+					else {
+						diffs[p] = 0; // 2,2 needs demotion
+						num++;
+					}
+				}
+				else { // 3,1
+					int y = left ? pool.right[p] : pool.left[p];
+					byte y2 = diffs[y];
+					if (y2 == 0) { // y is 1,1, the rotated subtree keeps its rank
+						diffs[p] = side;
+						diffs[y] = other;
+						num += 2 + rotateUp(p, !left);
+						p = y;
+						balanced = true;
+					}
+					else if ((y2 & side) != 0) { // y's inner child is lower, single rotation
+						diffs[p] = 0;
+						diffs[y] = 0;
+						num += 2 + rotateUp(p, !left);
+						p = y;
+					}
+					else { // y's outer child is lower, double rotation
+						int g = left ? pool.left[y] : pool.right[y];
+						byte g2 = diffs[g];
+						diffs[p] = ((g2 & side) != 0) ? other : 0; // p takes g's child on the side of p
+						diffs[y] = ((g2 & other) != 0) ? side : 0; // y takes g's other child
+						diffs[g] = 0;
+						num += 4 + rotateUp(y, left) + rotateUp(p, !left);
+						p = g;
+					}
+				}
+			}
+			int parent = pool.parent[p];
+			if (parent == NIL && !balanced) // the root's rank was lowered
+				this.rank--;
+			left = pool.left[parent] == p;
+			p = parent;
+		}
+		return num;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 * precondition: k != -1
+	 */
+	public int insert(int k, String i) {
+		checkKey(k);
+		int y = treePosition(k);
+		if (y != NIL && this.pool.key[y] == k) // the key already exists in tree
+			return -1;
+		int n = this.pool.allocate(k, i);
+		this.pool.parent[n] = y;
+		if (y == NIL) { // the tree is empty
+			this.root = n;
+			this.rank = 0;
+			return 0;
+		}
+		boolean left = k < this.pool.key[y];
+		if (left)
+			this.pool.left[y] = n;
+		else
+			this.pool.right[y] = n;
+		return rebalanceInsert(y, left, 1); // rebalancing the tree and updating the sizes
+	}
+
+	/**
+	 * private static void checkKey(int k)
+	 *
+	 * throws an IllegalArgumentException if k is the reserved key -1.
+	 */
+	private static void checkKey(int k) {
+		if (k == -1)
+			throw new IllegalArgumentException("key -1 is reserved");
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		NodePool p = this.pool;
+		int n = treePosition(k);
+		if (n == NIL || p.key[n] != k) // not in tree
+			return -1;
+		if (p.left[n] != NIL && p.right[n] != NIL) { // two children, the successor's item moves into n
+			int m = p.right[n];
+			while (p.left[m] != NIL)
+				m = p.left[m];
+			p.key[n] = p.key[m];
+			p.info[n] = p.info[m];
+			n = m;
+		}
+		int child = (p.left[n] != NIL) ? p.left[n] : p.right[n];
+		int y = p.parent[n];
+		boolean left = p.left[y] == n;
+		if (y == NIL) // the root is deleted, its child is the new root
+			this.rank = (child == NIL) ? -1 : this.rank - rankDiff(n, p.left[n] != NIL);
+		replaceChild(y, n, child);
+		p.release(n);
+		return rebalanceDelete(y, left); // rebalancing the tree and updating the sizes
+	}
+
+	/**
+	 * private int successor(int n)
+	 *
+	 * returns the successor of n, or NIL if n holds the largest key.
+	 */
+	private int successor(int n) {
+		NodePool p = this.pool;
+		if (p.right[n] != NIL) {
+			n = p.right[n];
+			while (p.left[n] != NIL)
+				n = p.left[n];
+			return n;
+		}
+		int parent = p.parent[n];
+		while (parent != NIL && p.right[parent] == n) { // n is a right child
+			n = parent;
+			parent = p.parent[n];
+		}
+		return parent;
+	}
+
+	/**
+	 * private int first()
+	 *
+	 * returns the node with the smallest key, or NIL if the tree is empty.
+	 */
+	private int first() {
+		int n = this.root;
+		if (n != NIL)
+			while (this.pool.left[n] != NIL)
+				n = this.pool.left[n];
+		return n;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[this.size()];
+		int index = 0;
+		for (int n = first(); n != NIL; n = successor(n))
+			arr[index++] = this.pool.key[n];
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[this.size()];
+		int index = 0;
+		for (int n = first(); n != NIL; n = successor(n))
+			arr[index++] = this.pool.info[n];
+		return arr;
+	}
+
+	/**
+	 * private ArrayAVLTree subtree(int n, int rank)
+	 *
+	 * detaches the subtree rooted at n, whose rank is given, and returns it as a tree over the same pool.
+	 */
+	private ArrayAVLTree subtree(int n, int rank) {
+		ArrayAVLTree t = new ArrayAVLTree(this.pool);
+		if (n != NIL)
+			this.pool.parent[n] = NIL;
+		t.root = n;
+		t.rank = (n == NIL) ? -1 : rank;
+		return t;
+	}
+
+	/**
+	 * public ArrayAVLTree[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two trees over this tree's pool. keys(t1) < x < keys(t2).
+	 * The nodes on the path to x are reused as the join nodes, and x's node is released.
+	 * This tree is left empty.
+	 * precondition: search(x) != null
+	 */
+	public ArrayAVLTree[] split(int x) {
+		NodePool p = this.pool;
+		int n = treePosition(x);
+		int rank = rankOf(n); // the ranks on the path are found from n's rank and the differences
+		ArrayAVLTree t1 = subtree(p.left[n], rank - rankDiff(n, true)); // tree with smaller keys
+		ArrayAVLTree t2 = subtree(p.right[n], rank - rankDiff(n, false)); // tree with bigger keys
+		int cur = n;
+		int parent = p.parent[n];
+		while (parent != NIL) {
+			int next = p.parent[parent];
+			boolean fromLeft = p.left[parent] == cur;
+			rank += rankDiff(parent, fromLeft); // parent's rank
+			if (!fromLeft) // cur is a right child
+				t1.joinNode(parent, subtree(p.left[parent], rank - rankDiff(parent, true)));
+			else
+				t2.joinNode(parent, subtree(p.right[parent], rank - rankDiff(parent, false)));
+			cur = parent;
+			parent = next;
+		}
+		p.release(n);
+		this.root = NIL;
+		this.rank = -1;
+		ArrayAVLTree[] result = {t1, t2};
+		return result;
+	}
+
+	/**
+	 * public int join(int k, String i, ArrayAVLTree t)
+	 *
+	 * joins t and a new item with key k and info i with the tree, t is left empty.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * If t doesn't share this tree's pool (it wasn't split from the same tree), its nodes are
+	 * copied to this tree's pool first, which takes O(t.size()) more.
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys(), k != -1
+	 */
+	public int join(int k, String i, ArrayAVLTree t) {
+		checkKey(k);
+		int res = Math.abs(this.getRank() - t.getRank()) + 1;
+		if (t.pool != this.pool) {
+			ArrayAVLTree copy = subtree(adopt(t.pool, t.root), t.rank);
+			t.root = NIL;
+			t.rank = -1;
+			t = copy;
+		}
+		joinNode(this.pool.allocate(k, i), t);
+		return res;
+	}
+
+	/**
+	 * private int adopt(NodePool from, int n)
+	 *
+	 * copies the subtree of n from another pool to this tree's pool, with the same rank differences and sizes,
+	 * and releases its nodes in the other pool. Returns the copy of n, NIL for the virtual leaf.
+	 */
+	private int adopt(NodePool from, int n) {
+		if (n == NIL)
+			return NIL;
+		NodePool p = this.pool;
+		int l = adopt(from, from.left[n]);
+		int r = adopt(from, from.right[n]);
+		int copy = p.allocate(from.key[n], from.info[n]);
+		p.left[copy] = l;
+		p.right[copy] = r;
+		if (l != NIL)
+			p.parent[l] = copy;
+		if (r != NIL)
+			p.parent[r] = copy;
+		p.diffs[copy] = from.diffs[n];
+		p.size[copy] = from.size[n];
+		from.release(n);
+		return copy;
+	}
+
+	/**
+	 * private void joinNode(int x, ArrayAVLTree t)
+	 *
+	 * joins t and the detached node x with the tree, t is left empty.
+	 */
+	private void joinNode(int x, ArrayAVLTree t) {
+		NodePool p = this.pool;
+		int thisRoot = this.root;
+		int otherRoot = t.root;
+		int thisRank = this.rank;
+		int otherRank = t.rank;
+		t.root = NIL;
+		t.rank = -1;
+		int leftRoot = otherRoot;
+		int rightRoot = thisRoot;
+		int leftRank = otherRank;
+		int rightRank = thisRank;
+		if (otherRoot == NIL ? p.key[x] > p.key[thisRoot] : p.key[otherRoot] > p.key[x]) {
+			leftRoot = thisRoot;
+			rightRoot = otherRoot;
+			leftRank = thisRank;
+			rightRank = otherRank;
+		}
+		if (Math.abs(leftRank - rightRank) <= 1) { // x becomes the root
+			this.rank = link(x, leftRoot, leftRank, rightRoot, rightRank);
+			p.parent[x] = NIL;
+			this.root = x;
+			return;
+		}
+		int c;
+		int cRank;
+		int xRank;
+		boolean left = leftRank < rightRank;
+		if (left) { // walk down the left spine of the right tree
+			c = rightRoot;
+			cRank = rightRank;
+			while (cRank - rankDiff(c, true) > leftRank + 1) {
+				cRank -= rankDiff(c, true);
+				c = p.left[c];
+			}
+			xRank = link(x, leftRoot, leftRank, p.left[c], cRank - rankDiff(c, true));
+			p.left[c] = x;
+			this.root = rightRoot;
+			this.rank = rightRank;
+		}
+		else { // walk down the right spine of the left tree
+			c = leftRoot;
+			cRank = leftRank;
+			while (cRank - rankDiff(c, false) > rightRank + 1) {
+				cRank -= rankDiff(c, false);
+				c = p.right[c];
+			}
+			xRank = link(x, p.right[c], cRank - rankDiff(c, false), rightRoot, rightRank);
+			p.right[c] = x;
+			this.root = leftRoot;
+			this.rank = leftRank;
+		}
+		p.parent[x] = c;
+		p.diffs[c] &= ~two(left); // the difference to x is 1, or 0 if x is higher than the subtree it replaced
+		int delta = p.size[left ? leftRoot : rightRoot] + 1; // the shorter tree and x were added below c
+		if (cRank == xRank)
+			rebalanceInsert(c, left, delta);
+		else
+			addToSizes(c, delta);
+	}
+
+	/**
+	 * private int link(int x, int l, int lRank, int r, int rRank)
+	 *
+	 * sets l and r, whose ranks are given, as the children of x, and fixes x's rank differences and size.
+	 * Returns the rank of x.
+	 */
+	private int link(int x, int l, int lRank, int r, int rRank) {
+		NodePool p = this.pool;
+		p.left[x] = l;
+		p.right[x] = r;
+		if (l != NIL)
+			p.parent[l] = x;
+		if (r != NIL)
+			p.parent[r] = x;
+		int rank = Math.max(lRank, rRank) + 1;
+		p.diffs[x] = (byte)(((rank - lRank == 2) ? LEFT_TWO : 0) | ((rank - rRank == 2) ? RIGHT_TWO : 0));
+		p.size[x] = p.size[l] + p.size[r] + 1;
+		return rank;
+	}
+
+
+	/**
+	 * void checkInvariants()
+	 *
+	 * walks the whole tree and throws an IllegalStateException if it is broken: a key out of order,
+	 * a wrong parent or size, rank difference bits that don't add up or make a 2,2 node,
+	 * a wrong root rank or a changed virtual leaf.
+	 * Runs in O(n), for InvariantTester.
+	 */
+	void checkInvariants() {
+		if (this.pool.diffs[NIL] != 0 || this.pool.size[NIL] != 0)
+			throw new IllegalStateException("the virtual leaf was changed");
+		if (this.root != NIL && this.pool.parent[this.root] != NIL)
+			throw new IllegalStateException("the root has a parent");
+		if (checkSubtree(this.root, NIL, Long.MIN_VALUE, Long.MAX_VALUE) != this.rank)
+			throw new IllegalStateException("wrong rank of the root");
+	}
+
+	/**
+	 * private int checkSubtree(int n, int parent, long lo, long hi)
+	 *
+	 * checks the subtree of n for checkInvariants, its keys must be between lo and hi.
+	 * returns the rank of n.
+	 */
+	private int checkSubtree(int n, int parent, long lo, long hi) {
+		if (n == NIL)
+			return -1;
+		NodePool p = this.pool;
+		int k = p.key[n];
+		if (p.parent[n] != parent)
+			throw new IllegalStateException("wrong parent of " + k);
+		if (k <= lo || k >= hi)
+			throw new IllegalStateException("key " + k + " is out of order");
+		int leftRank = checkSubtree(p.left[n], n, lo, k);
+		int rightRank = checkSubtree(p.right[n], n, k, hi);
+		if (p.size[n] != p.size[p.left[n]] + p.size[p.right[n]] + 1)
+			throw new IllegalStateException("wrong size of " + k);
+		int rank = leftRank + rankDiff(n, true);
+		if (rank != rightRank + rankDiff(n, false) || p.diffs[n] == (LEFT_TWO | RIGHT_TWO)) // 1,1, 1,2 or 2,1
+			throw new IllegalStateException("the rank rule doesn't hold at " + k);
+		return rank;
+	}
+
+
+	/**
+	 * static class NodePool
+	 *
+	 * Parallel arrays holding the fields of the nodes, index 0 is the virtual leaf.
+	 * Released nodes are chained through the left array and reused before the arrays grow.
+	 */
+	static class NodePool {
+		int[] key;
+		int[] left;
+		int[] right;
+		int[] parent;
+		byte[] diffs; // LEFT_TWO and RIGHT_TWO bits
+		int[] size;
+		String[] info;
+		private int next = 1; // the first index that was never used
+		private int free = NIL; // the head of the free list
+
+		NodePool(int capacity) {
+			capacity = Math.max(capacity, 2);
+			this.key = new int[capacity];
+			this.left = new int[capacity];
+			this.right = new int[capacity];
+			this.parent = new int[capacity];
+			this.diffs = new byte[capacity];
+			this.size = new int[capacity];
+			this.info = new String[capacity];
+		}
+
+		/**
+		 * int allocate(int k, String i)
+		 *
+		 * returns the index of a new leaf with key k and info i, without a parent.
+		 */
+		int allocate(int k, String i) {
+			int n = this.free;
+			if (n != NIL)
+				this.free = this.left[n];
+			else {
+				if (this.next == this.key.length)
+					grow();
+				n = this.next++;
+			}
+			this.key[n] = k;
+			this.info[n] = i;
+			this.left[n] = NIL;
+			this.right[n] = NIL;
+			this.parent[n] = NIL;
+			this.diffs[n] = 0; // a leaf is 1,1
+			this.size[n] = 1;
+			return n;
+		}
+
+		/**
+		 * void release(int n)
+		 *
+		 * puts n in the free list.
+		 */
+		void release(int n) {
+			this.info[n] = null; // lets the GC collect the info
+			this.left[n] = this.free;
+			this.free = n;
+		}
+
+		private void grow() {
+			int capacity = this.key.length * 2;
+			this.key = Arrays.copyOf(this.key, capacity);
+			this.left = Arrays.copyOf(this.left, capacity);
+			this.right = Arrays.copyOf(this.right, capacity);
+			this.parent = Arrays.copyOf(this.parent, capacity);
+			this.diffs = Arrays.copyOf(this.diffs, capacity);
+			this.size = Arrays.copyOf(this.size, capacity);
+			this.info = Arrays.copyOf(this.info, capacity);
+		}
+	}
+}
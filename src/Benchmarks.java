@@ -0,0 +1,947 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * Benchmarks
+ *
+ * Micro benchmarks for AVLTree, in the spirit of Tests.Measurments.
+ * Every method prints its results, main runs all of them.
+ *
+ */
+
+public class Benchmarks {
+
+	static final int WARMUP_ROUNDS = 3;
+
+	/**
+	 * returns the number of bytes allocated so far by the current thread
+	 */
+	static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+	}
+
+	static Integer[] shuffleArray(int n) {
+		Integer[] arr = new Integer[n];
+		for (int i = 0; i < n; i++)
+			arr[i] = i;
+		List<Integer> intList = Arrays.asList(arr);
+		Collections.shuffle(intList);
+		intList.toArray(arr);
+		return arr;
+	}
+
+	static String[] infos(int n) {
+		String[] res = new String[n];
+		for (int i = 0; i < n; i++)
+			res[i] = "" + i;
+		return res;
+	}
+
+	/**
+	 * static void allocationRate()
+	 *
+	 * prints the number of bytes allocated per insert into a fresh tree.
+	 * the info strings are created before measuring, so only the tree's own allocations are counted.
+	 */
+	static void allocationRate() {
+		System.out.println("allocation rate:");
+		for (int n = 100000; n <= 1000000; n *= 10) {
+			Integer[] keys = shuffleArray(n);
+			String[] infos = infos(n);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree t = new AVLTree();
+				long before = allocatedBytes();
+				long start = System.nanoTime();
+				for (int k : keys)
+					t.insert(k, infos[k]);
+				long time = System.nanoTime() - start;
+				long bytes = allocatedBytes() - before;
+				if (round == WARMUP_ROUNDS)
+					System.out.println("insert " + n + " keys: " + bytes / (double)n + " bytes/insert, "
+							+ time / (double)n + " ns/insert, tree size " + t.size());
+			}
+		}
+	}
+
+	/**
+	 * returns the number of bytes used by the heap after a full collection
+	 */
+	static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	/**
+	 * static void memoryPerEntry()
+	 *
+	 * prints the heap bytes per entry and the search time of AVLTree and ArrayAVLTree,
+	 * the info strings are shared by both trees and are not counted.
+	 */
+	static void memoryPerEntry() {
+		System.out.println("memory per entry:");
+		int n = 1000000;
+		Integer[] keys = shuffleArray(n);
+		String[] infos = infos(n);
+
+		long before = usedHeap();
+		AVLTree t = new AVLTree();
+		for (int k : keys)
+			t.insert(k, infos[k]);
+		long objectBytes = usedHeap() - before;
+		long objectTime = timeSearches(t, null, keys);
+		t = null;
+
+		before = usedHeap();
+		ArrayAVLTree a = new ArrayAVLTree();
+		for (int k : keys)
+			a.insert(k, infos[k]);
+		long arrayBytes = usedHeap() - before;
+		long arrayTime = timeSearches(null, a, keys);
+
+		System.out.println("AVLTree: " + objectBytes / (double)n + " bytes/entry, " + objectTime / (double)n + " ns/search");
+		System.out.println("ArrayAVLTree: " + arrayBytes / (double)n + " bytes/entry, " + arrayTime / (double)n + " ns/search, size " + a.size());
+	}
+
+	static long timeSearches(AVLTree t, ArrayAVLTree a, Integer[] keys) {
+		long time = 0;
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int k : keys) {
+				if ((t != null ? t.search(k) : a.search(k)) == null)
+					throw new IllegalStateException("missing key " + k);
+			}
+			time = System.nanoTime() - start;
+		}
+		return time;
+	}
+
+	/**
+	 * static void offHeapFootprint()
+	 *
+	 * prints the heap bytes kept by an OffHeapAVLTree for growing sizes,
+	 * the infos are created on the fly so only the tree is counted.
+	 */
+	static void offHeapFootprint() {
+		System.out.println("off heap footprint:");
+		for (int n = 100000; n <= 10000000; n *= 10) {
+			Integer[] keys = shuffleArray(n);
+			long before = usedHeap();
+			OffHeapAVLTree t = new OffHeapAVLTree();
+			for (int k : keys)
+				t.insert(k, "" + k);
+			long bytes = usedHeap() - before;
+			System.out.println("OffHeapAVLTree " + keys.length + " keys: " + bytes + " heap bytes, size " + t.size());
+		}
+	}
+
+	/**
+	 * static void pathTreeComparison()
+	 *
+	 * prints the heap bytes per entry and the insert time of AVLTree and PathAVLTree.
+	 */
+	static void pathTreeComparison() {
+		System.out.println("parent pointers vs path:");
+		int n = 1000000;
+		Integer[] keys = shuffleArray(n);
+		String[] infos = infos(n);
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			long before = usedHeap();
+			long start = System.nanoTime();
+			AVLTree t = new AVLTree();
+			for (int k : keys)
+				t.insert(k, infos[k]);
+			long objectTime = System.nanoTime() - start;
+			long objectBytes = usedHeap() - before;
+			int objectSize = t.size(); // keeps t reachable while measuring
+			t = null;
+
+			before = usedHeap();
+			start = System.nanoTime();
+			PathAVLTree p = new PathAVLTree();
+			for (int k : keys)
+				p.insert(k, infos[k]);
+			long pathTime = System.nanoTime() - start;
+			long pathBytes = usedHeap() - before;
+
+			if (round == WARMUP_ROUNDS) {
+				System.out.println("AVLTree: " + objectBytes / (double)n + " bytes/entry, " + objectTime / (double)n + " ns/insert, size " + objectSize);
+				System.out.println("PathAVLTree: " + pathBytes / (double)n + " bytes/entry, " + pathTime / (double)n + " ns/insert, size " + p.size());
+			}
+		}
+	}
+
+	/**
+	 * static IdentityHashMap<AVLTree.AVLNode, Integer> sizes(AVLTree t)
+	 *
+	 * returns the size attribute of every node of the tree.
+	 */
+	static IdentityHashMap<AVLTree.AVLNode, Integer> sizes(AVLTree t) {
+		IdentityHashMap<AVLTree.AVLNode, Integer> res = new IdentityHashMap<>();
+		ArrayDeque<AVLTree.IAVLNode> stack = new ArrayDeque<>();
+		if (t.getRoot() != null)
+			stack.push(t.getRoot());
+		while (!stack.isEmpty()) {
+			AVLTree.AVLNode n = (AVLTree.AVLNode)stack.pop();
+			res.put(n, n.getSize());
+			if (n.getLeft().isRealNode())
+				stack.push(n.getLeft());
+			if (n.getRight().isRealNode())
+				stack.push(n.getRight());
+		}
+		return res;
+	}
+
+	/**
+	 * static int changedSizes(IdentityHashMap<AVLTree.AVLNode, Integer> before, AVLTree t)
+	 *
+	 * returns the number of nodes that were in the tree before and whose size attribute has changed since.
+	 */
+	static int changedSizes(IdentityHashMap<AVLTree.AVLNode, Integer> before, AVLTree t) {
+		int res = 0;
+		for (java.util.Map.Entry<AVLTree.AVLNode, Integer> e : sizes(t).entrySet()) {
+			Integer old = before.get(e.getKey());
+			if (old != null && !old.equals(e.getValue()))
+				res++;
+		}
+		return res;
+	}
+
+	/**
+	 * static void sizeMaintenance()
+	 *
+	 * prints the time per operation when inserting and then deleting all the keys of a tree in random order,
+	 * and the number of size attributes that an insert and a delete change, from snapshots of all the sizes
+	 * taken around a sample of the operations. The counting stays out of the tree.
+	 */
+	static void sizeMaintenance() {
+		System.out.println("size maintenance:");
+		int samples = 100;
+		for (int n = 100000; n <= 1000000; n *= 10) {
+			Integer[] keys = shuffleArray(n);
+			Integer[] deleteOrder = shuffleArray(n);
+			String[] infos = infos(n);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree t = new AVLTree();
+				long start = System.nanoTime();
+				for (int k : keys)
+					t.insert(k, infos[k]);
+				long insertTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int k : deleteOrder)
+					t.delete(k);
+				long deleteTime = System.nanoTime() - start;
+				if (round == WARMUP_ROUNDS) {
+					System.out.println("insert " + n + " keys: " + insertTime / (double)n + " ns/insert");
+					System.out.println("delete " + n + " keys: " + deleteTime / (double)n + " ns/delete, tree size " + t.size());
+				}
+			}
+			AVLTree t = new AVLTree();
+			long insertChanges = 0;
+			for (int i = 0; i < n; i++) {
+				if (i < n - samples)
+					t.insert(keys[i], infos[keys[i]]);
+				else { // the last inserts are sampled, on an almost full tree
+					IdentityHashMap<AVLTree.AVLNode, Integer> before = sizes(t);
+					t.insert(keys[i], infos[keys[i]]);
+					insertChanges += changedSizes(before, t);
+				}
+			}
+			long deleteChanges = 0;
+			for (int i = 0; i < samples; i++) { // the first deletes are sampled, on the full tree
+				IdentityHashMap<AVLTree.AVLNode, Integer> before = sizes(t);
+				t.delete(deleteOrder[i]);
+				deleteChanges += changedSizes(before, t);
+			}
+			System.out.println(n + " keys: " + insertChanges / (double)samples + " sizes changed/insert, "
+					+ deleteChanges / (double)samples + " sizes changed/delete");
+		}
+	}
+
+	/**
+	 * static void bulkLoad()
+	 *
+	 * prints the time per key of building a tree from sorted keys by inserting
+	 * them one by one, by fromSorted and by the parallel fromSorted.
+	 */
+	static void bulkLoad() {
+		System.out.println("bulk load:");
+		for (int n = 1000000; n <= 10000000; n *= 10) {
+			int[] keys = new int[n];
+			for (int i = 0; i < n; i++)
+				keys[i] = i;
+			String[] infos = infos(n);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				long start = System.nanoTime();
+				AVLTree t = new AVLTree();
+				for (int i = n - 1; i >= 0; i--) // descending is the worst case for insert
+					t.insert(keys[i], infos[i]);
+				long insertTime = System.nanoTime() - start;
+				int insertSize = t.size();
+				t = null;
+				
+				start = System.nanoTime();
+				AVLTree s = AVLTree.fromSorted(keys, infos);
+				long sortedTime = System.nanoTime() - start;
+				int sortedSize = s.size();
+				s = null;
+				
+				start = System.nanoTime();
+				AVLTree p = AVLTree.fromSorted(keys, infos, true);
+				long parallelTime = System.nanoTime() - start;
+				
+				if (round == WARMUP_ROUNDS) {
+					System.out.println(n + " keys: insert " + insertTime / (double)n + " ns/key, size " + insertSize);
+					System.out.println(n + " keys: fromSorted " + sortedTime / (double)n + " ns/key, size " + sortedSize);
+					System.out.println(n + " keys: parallel fromSorted " + parallelTime / (double)n + " ns/key, size " + p.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * static void batchInsert()
+	 *
+	 * prints the time per key of adding an unsorted batch to a tree of 1M keys,
+	 * by inserting the keys one by one and by insertAll.
+	 */
+	static void batchInsert() {
+		System.out.println("batch insert:");
+		int n = 1000000;
+		int[] treeKeys = new int[n];
+		for (int i = 0; i < n; i++)
+			treeKeys[i] = 2 * i; // the batch keys are odd, so they are all new
+		String[] treeInfos = infos(n);
+		for (int m = 10000; m <= 1000000; m *= 10) {
+			Integer[] shuffled = shuffleArray(m);
+			int[] batch = new int[m];
+			for (int i = 0; i < m; i++)
+				batch[i] = 2 * (int)((long)shuffled[i] * n / m) + 1;
+			String[] batchInfos = infos(m);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree t = AVLTree.fromSorted(treeKeys, treeInfos);
+				usedHeap(); // collects before measuring
+				long start = System.nanoTime();
+				for (int i = 0; i < m; i++)
+					t.insert(batch[i], batchInfos[i]);
+				long insertTime = System.nanoTime() - start;
+				int insertSize = t.size();
+				
+				t = AVLTree.fromSorted(treeKeys, treeInfos);
+				usedHeap();
+				start = System.nanoTime();
+				t.insertAll(batch, batchInfos);
+				long batchTime = System.nanoTime() - start;
+				
+				if (round == WARMUP_ROUNDS) {
+					System.out.println("batch of " + m + ": insert " + insertTime / (double)m + " ns/key, size " + insertSize);
+					System.out.println("batch of " + m + ": insertAll " + batchTime / (double)m + " ns/key, size " + t.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * static void setOperations()
+	 *
+	 * prints the time of merging a delta tree into a tree of 1M keys
+	 * by reinserting the delta's keys and by union, and the time of intersection and difference.
+	 */
+	static void setOperations() {
+		System.out.println("set operations:");
+		int n = 1000000;
+		int[] treeKeys = new int[n];
+		for (int i = 0; i < n; i++)
+			treeKeys[i] = 2 * i;
+		String[] treeInfos = infos(n);
+		for (int m = 1000; m <= 100000; m *= 10) {
+			int[] deltaKeys = new int[m];
+			for (int i = 0; i < m; i++)
+				deltaKeys[i] = 2 * (int)((long)i * n / m) + (i % 2); // half of the delta is already in the tree
+			String[] deltaInfos = infos(m);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree t = AVLTree.fromSorted(treeKeys, treeInfos);
+				AVLTree delta = AVLTree.fromSorted(deltaKeys, deltaInfos);
+				usedHeap(); // collects before measuring
+				long start = System.nanoTime();
+				int[] keys = delta.keysToArray();
+				String[] infos = delta.infoToArray();
+				for (int i = 0; i < keys.length; i++)
+					t.insert(keys[i], infos[i]);
+				long insertTime = System.nanoTime() - start;
+				
+				t = AVLTree.fromSorted(treeKeys, treeInfos);
+				delta = AVLTree.fromSorted(deltaKeys, deltaInfos);
+				usedHeap();
+				start = System.nanoTime();
+				t.union(delta);
+				long unionTime = System.nanoTime() - start;
+				int unionSize = t.size();
+				
+				t = AVLTree.fromSorted(treeKeys, treeInfos);
+				delta = AVLTree.fromSorted(deltaKeys, deltaInfos);
+				usedHeap();
+				start = System.nanoTime();
+				t.intersection(delta);
+				long intersectionTime = System.nanoTime() - start;
+				int intersectionSize = t.size();
+				
+				t = AVLTree.fromSorted(treeKeys, treeInfos);
+				delta = AVLTree.fromSorted(deltaKeys, deltaInfos);
+				usedHeap();
+				start = System.nanoTime();
+				t.difference(delta);
+				long differenceTime = System.nanoTime() - start;
+				
+				if (round == WARMUP_ROUNDS) {
+					System.out.println("delta of " + m + ": reinsert " + insertTime / 1000 + " us, union " + unionTime / 1000 + " us, size " + unionSize);
+					System.out.println("delta of " + m + ": intersection " + intersectionTime / 1000 + " us, size " + intersectionSize
+							+ ", difference " + differenceTime / 1000 + " us, size " + t.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * static void parallelSetOperations()
+	 *
+	 * prints the time of the union and the intersection of two trees of 1M keys each
+	 * on fork-join pools of 1 to 16 threads.
+	 */
+	static void parallelSetOperations() {
+		System.out.println("parallel set operations (" + Runtime.getRuntime().availableProcessors() + " cores):");
+		int n = 1000000;
+		int threshold = 1 << 14;
+		int[] aKeys = new int[n];
+		int[] bKeys = new int[n];
+		for (int i = 0; i < n; i++) {
+			aKeys[i] = 3 * i;
+			bKeys[i] = 3 * i + (i % 2); // half of b is in a
+		}
+		String[] infos = infos(n);
+		for (int threads = 1; threads <= 16; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree a = AVLTree.fromSorted(aKeys, infos);
+				AVLTree b = AVLTree.fromSorted(bKeys, infos);
+				usedHeap(); // collects before measuring
+				long start = System.nanoTime();
+				a.union(b, pool, threshold);
+				long unionTime = System.nanoTime() - start;
+				int unionSize = a.size();
+				
+				a = AVLTree.fromSorted(aKeys, infos);
+				b = AVLTree.fromSorted(bKeys, infos);
+				usedHeap();
+				start = System.nanoTime();
+				a.intersection(b, pool, threshold);
+				long intersectionTime = System.nanoTime() - start;
+				
+				if (round == WARMUP_ROUNDS)
+					System.out.println(threads + " threads: union " + unionTime / 1000000 + " ms, size " + unionSize
+							+ ", intersection " + intersectionTime / 1000000 + " ms, size " + a.size());
+			}
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * static void rankAndSelect()
+	 *
+	 * prints the time of select, rank and countRange against finding the same answers in keysToArray(),
+	 * for trees of 1M, 10M and 100M keys. Set -DmaxKeys to stop earlier on small heaps,
+	 * a tree of 100M keys needs about 6GB.
+	 */
+	static void rankAndSelect() {
+		System.out.println("rank and select:");
+		int maxKeys = Integer.getInteger("maxKeys", 100000000);
+		int queries = 100000;
+		for (int n = 1000000; n <= maxKeys; n *= 10) {
+			int[] keys = new int[n];
+			for (int i = 0; i < n; i++)
+				keys[i] = 2 * i;
+			String[] infos = new String[n];
+			Arrays.fill(infos, ""); // one shared info, so the large trees fit
+			AVLTree t = AVLTree.fromSorted(keys, infos);
+			keys = null;
+			infos = null;
+			
+			java.util.Random random = new java.util.Random(n);
+			int[] indices = new int[queries];
+			for (int i = 0; i < queries; i++)
+				indices[i] = random.nextInt(n);
+			long sum = 0; // keeps the results alive
+			long selectTime = 0, rankTime = 0, countTime = 0, arrayTime = 0;
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				long start = System.nanoTime();
+				for (int i : indices)
+					sum += t.select(i);
+				selectTime = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				for (int i : indices)
+					sum += t.rank(2 * i + 1);
+				rankTime = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				for (int i : indices)
+					sum += t.countRange(i, 2 * i);
+				countTime = System.nanoTime() - start;
+				
+				start = System.nanoTime(); // the array approach pays a full export for every query
+				int[] arr = t.keysToArray();
+				sum += arr[indices[0]];
+				arrayTime = System.nanoTime() - start;
+			}
+			System.out.println(n + " keys: select " + selectTime / (double)queries + " ns, rank " + rankTime / (double)queries
+					+ " ns, countRange " + countTime / (double)queries + " ns, keysToArray " + arrayTime / 1000 + " us per query, checksum " + sum);
+		}
+	}
+
+	/**
+	 * static void exportCost()
+	 *
+	 * prints the bytes allocated and the time of keysToArray and infoToArray for trees of 1M and 10M keys,
+	 * an int[] or String[] of the tree's size is the least they can allocate.
+	 */
+	static void exportCost() {
+		System.out.println("export cost:");
+		for (int n = 1000000; n <= 10000000; n *= 10) {
+			int[] keys = new int[n];
+			for (int i = 0; i < n; i++)
+				keys[i] = i;
+			String[] infos = new String[n];
+			Arrays.fill(infos, "");
+			AVLTree t = AVLTree.fromSorted(keys, infos);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				long before = allocatedBytes();
+				long start = System.nanoTime();
+				keys = t.keysToArray();
+				long keysTime = System.nanoTime() - start;
+				long keysBytes = allocatedBytes() - before;
+				
+				before = allocatedBytes();
+				start = System.nanoTime();
+				infos = t.infoToArray();
+				long infoTime = System.nanoTime() - start;
+				long infoBytes = allocatedBytes() - before;
+				if (round == WARMUP_ROUNDS) {
+					System.out.println(n + " keys: keysToArray " + keysBytes / (double)n + " bytes/key, " + keysTime / (double)n + " ns/key");
+					System.out.println(n + " keys: infoToArray " + infoBytes / (double)n + " bytes/key, " + infoTime / (double)n + " ns/key, " + infos.length + " infos");
+				}
+			}
+		}
+	}
+
+	/**
+	 * static void chunkedExport()
+	 *
+	 * prints the bytes allocated and the time of exporting a tree of 10M keys
+	 * in 64K chunks with keysInto and infoInto, reusing one buffer of each type.
+	 */
+	static void chunkedExport() {
+		System.out.println("chunked export:");
+		int n = 10000000;
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = i;
+		String[] infos = new String[n];
+		Arrays.fill(infos, "");
+		AVLTree t = AVLTree.fromSorted(keys, infos);
+		int[] keyChunk = new int[1 << 16];
+		String[] infoChunk = new String[1 << 16];
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			long sum = 0;
+			long before = allocatedBytes();
+			long start = System.nanoTime();
+			for (int rank = 0; rank < t.size(); rank += keyChunk.length) {
+				int copied = t.keysInto(keyChunk, 0, rank);
+				t.infoInto(infoChunk, 0, rank);
+				sum += keyChunk[copied - 1];
+			}
+			long time = System.nanoTime() - start;
+			long bytes = allocatedBytes() - before;
+			if (round == WARMUP_ROUNDS)
+				System.out.println(n + " keys in chunks of " + keyChunk.length + ": " + bytes + " bytes allocated, "
+						+ time / (double)n + " ns/key, checksum " + sum);
+		}
+	}
+
+	/**
+	 * static void parallelExport()
+	 *
+	 * prints the time of keysToArrayParallel and infoToArrayParallel on a tree of 10M keys
+	 * on fork-join pools of 1 to 16 threads, and of the sequential exports.
+	 */
+	static void parallelExport() {
+		System.out.println("parallel export (" + Runtime.getRuntime().availableProcessors() + " cores):");
+		int n = 10000000;
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = i;
+		String[] infos = new String[n];
+		Arrays.fill(infos, "");
+		AVLTree t = AVLTree.fromSorted(keys, infos);
+		keys = null;
+		infos = null;
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			long start = System.nanoTime();
+			int length = t.keysToArray().length + t.infoToArray().length;
+			long time = System.nanoTime() - start;
+			if (round == WARMUP_ROUNDS)
+				System.out.println("sequential: " + time / 1000000 + " ms for " + length + " entries");
+		}
+		for (int threads = 1; threads <= 16; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				long start = System.nanoTime();
+				int length = pool.submit(() -> t.keysToArrayParallel().length + t.infoToArrayParallel().length).join();
+				long time = System.nanoTime() - start;
+				if (round == WARMUP_ROUNDS)
+					System.out.println(threads + " threads: " + time / 1000000 + " ms for " + length + " entries");
+			}
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * static void keyStream()
+	 *
+	 * prints the bytes allocated and the time of summing the keys of a tree of 10M keys
+	 * through keys() and through Arrays.stream(keysToArray()), sequential and parallel.
+	 */
+	static void keyStream() {
+		System.out.println("key stream:");
+		int n = 10000000;
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = i;
+		String[] infos = new String[n];
+		Arrays.fill(infos, "");
+		AVLTree t = AVLTree.fromSorted(keys, infos);
+		keys = null;
+		infos = null;
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			long before = allocatedBytes();
+			long start = System.nanoTime();
+			long streamSum = t.keys().asLongStream().sum();
+			long streamTime = System.nanoTime() - start;
+			long streamBytes = allocatedBytes() - before;
+			
+			before = allocatedBytes();
+			start = System.nanoTime();
+			long arraySum = Arrays.stream(t.keysToArray()).asLongStream().sum();
+			long arrayTime = System.nanoTime() - start;
+			long arrayBytes = allocatedBytes() - before;
+			
+			start = System.nanoTime();
+			long parallelSum = t.keys().parallel().asLongStream().sum();
+			long parallelTime = System.nanoTime() - start;
+			if (round == WARMUP_ROUNDS) {
+				System.out.println("keys(): " + streamTime / 1000000 + " ms, " + streamBytes + " bytes allocated, sum " + streamSum);
+				System.out.println("Arrays.stream(keysToArray()): " + arrayTime / 1000000 + " ms, " + arrayBytes + " bytes allocated, sum " + arraySum);
+				System.out.println("keys().parallel(): " + parallelTime / 1000000 + " ms, sum " + parallelSum);
+			}
+		}
+	}
+
+	/**
+	 * static void extremes()
+	 *
+	 * prints the time of min() and max() on a tree of 1M keys,
+	 * and of draining the tree as a priority queue with pollFirst.
+	 */
+	static void extremes() {
+		System.out.println("extremes:");
+		int n = 1000000;
+		Integer[] keys = shuffleArray(n);
+		String[] infos = infos(n);
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			AVLTree t = new AVLTree();
+			for (int k : keys)
+				t.insert(k, infos[k]);
+			long checksum = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < n; i++)
+				checksum += t.min().length() + t.max().length();
+			long extremesTime = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			while (!t.empty())
+				checksum += t.pollFirst().length();
+			long pollTime = System.nanoTime() - start;
+			if (round == WARMUP_ROUNDS)
+				System.out.println("min()+max(): " + extremesTime / (double)n + " ns, pollFirst: " + pollTime / (double)n + " ns, checksum " + checksum);
+		}
+	}
+
+	/**
+	 * static void fingerSearch()
+	 *
+	 * prints the insert and search time per key of 1M sorted, nearly sorted (every key is at most
+	 * 64 positions away from its place) and random keys, from the root and from the MAX and LAST fingers.
+	 */
+	static void fingerSearch() {
+		System.out.println("finger search:");
+		int n = 1000000;
+		int[] sorted = new int[n];
+		for (int i = 0; i < n; i++)
+			sorted[i] = i;
+		int[] nearlySorted = sorted.clone();
+		java.util.Random random = new java.util.Random(n);
+		for (int i = 0; i + 64 < n; i += 64) { // shuffling inside every block of 64 keys
+			for (int j = 63; j > 0; j--) {
+				int r = random.nextInt(j + 1);
+				int tmp = nearlySorted[i + j];
+				nearlySorted[i + j] = nearlySorted[i + r];
+				nearlySorted[i + r] = tmp;
+			}
+		}
+		Integer[] shuffled = shuffleArray(n);
+		int[] randomKeys = new int[n];
+		for (int i = 0; i < n; i++)
+			randomKeys[i] = shuffled[i];
+		String[] infos = infos(n);
+		
+		int[][] workloads = {sorted, nearlySorted, randomKeys};
+		String[] names = {"sorted", "nearly sorted", "random"};
+		for (int w = 0; w < workloads.length; w++) {
+			for (AVLTree.Finger finger : new AVLTree.Finger[] {AVLTree.Finger.ROOT, AVLTree.Finger.MAX, AVLTree.Finger.LAST}) {
+				for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+					AVLTree t = new AVLTree();
+					t.setFinger(finger);
+					usedHeap(); // collects before measuring
+					long start = System.nanoTime();
+					for (int k : workloads[w])
+						t.insert(k, infos[k]);
+					long insertTime = System.nanoTime() - start;
+					
+					start = System.nanoTime();
+					for (int k : workloads[w]) {
+						if (t.search(k) == null)
+							throw new IllegalStateException("missing key " + k);
+					}
+					long searchTime = System.nanoTime() - start;
+					if (round == WARMUP_ROUNDS)
+						System.out.println(names[w] + ", " + finger + ": insert " + insertTime / (double)n + " ns/key, search "
+								+ searchTime / (double)n + " ns/key, size " + t.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * static void rangeAggregates()
+	 *
+	 * prints the insert time per key of 1M random keys into a plain tree and into a tree that keeps
+	 * the sum of the infos (parsed as numbers), and the time of summing 1000 ranges of 100K keys
+	 * with aggregate against a scan with range.
+	 */
+	static void rangeAggregates() {
+		System.out.println("range aggregates:");
+		int n = 1000000;
+		Integer[] shuffled = shuffleArray(n);
+		String[] infos = infos(n);
+		int queries = 1000;
+		for (boolean augmented : new boolean[] {false, true}) {
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree t = new AVLTree();
+				if (augmented)
+					t.setAugmentation(AVLTree.Augmentation.sum(Long::parseLong));
+				usedHeap(); // collects before measuring
+				long start = System.nanoTime();
+				for (int k : shuffled)
+					t.insert(k, infos[k]);
+				long insertTime = System.nanoTime() - start;
+				
+				long sum = 0;
+				start = System.nanoTime();
+				for (int i = 0; i < queries; i++) {
+					int from = shuffled[i];
+					if (augmented)
+						sum += t.aggregate(from, from + 99999);
+					else {
+						for (java.util.PrimitiveIterator.OfInt it = t.range(from, from + 99999); it.hasNext(); )
+							sum += Long.parseLong(infos[it.nextInt()]);
+					}
+				}
+				long queryTime = System.nanoTime() - start;
+				if (round == WARMUP_ROUNDS)
+					System.out.println((augmented ? "aggregate" : "scan") + ": insert " + insertTime / (double)n + " ns/key, "
+							+ queryTime / (double)queries / 1000 + " us per range sum, checksum " + sum);
+			}
+		}
+	}
+
+	/**
+	 * static void weakChurn()
+	 *
+	 * prints the time and the rebalancing operations per insert and delete of a churn of 2M operations
+	 * on a tree of 1M random keys, where every insert of a new key is paired with a delete of an old one,
+	 * for an AVL tree and a weak AVL tree, and the rank of the tree at the end.
+	 */
+	static void weakChurn() {
+		System.out.println("weak AVL churn:");
+		int n = 1000000;
+		int ops = 1000000; // pairs of insert and delete
+		java.util.Random random = new java.util.Random(n);
+		int[] window = new int[n]; // the keys in the tree, in insertion order
+		for (int i = 0; i < n; i++)
+			window[i] = random.nextInt(Integer.MAX_VALUE);
+		int[] incoming = new int[ops];
+		for (int i = 0; i < ops; i++)
+			incoming[i] = random.nextInt(Integer.MAX_VALUE);
+		for (boolean weak : new boolean[] {false, true}) {
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree t = new AVLTree();
+				t.setWeak(weak);
+				for (int k : window)
+					t.insert(k, "");
+				int[] keys = window.clone();
+				usedHeap(); // collects before measuring
+				long insertOps = 0, deleteOps = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < ops; i++) {
+					insertOps += Math.max(t.insert(incoming[i], ""), 0);
+					int slot = i % n; // the oldest key leaves the window
+					deleteOps += Math.max(t.delete(keys[slot]), 0);
+					keys[slot] = incoming[i];
+				}
+				long time = System.nanoTime() - start;
+				if (round == WARMUP_ROUNDS)
+					System.out.println((weak ? "weak AVL" : "AVL") + ": " + time / (2.0 * ops) + " ns/op, " + insertOps / (double)ops
+							+ " rebalancing ops per insert, " + deleteOps / (double)ops + " per delete, rank " + t.getRank() + ", size " + t.size());
+			}
+		}
+	}
+
+	/**
+	 * static void nodePool()
+	 *
+	 * prints the bytes allocated per operation and the median and p99 latency of an insert paired with
+	 * a delete, on a sliding window of 100K random keys, without a node pool and with a pool of 1024 nodes.
+	 */
+	static void nodePool() {
+		System.out.println("node pool:");
+		int n = 100000;
+		int ops = 2000000; // pairs of insert and delete
+		java.util.Random random = new java.util.Random(n);
+		int[] incoming = new int[n + ops];
+		for (int i = 0; i < incoming.length; i++)
+			incoming[i] = random.nextInt(Integer.MAX_VALUE);
+		String info = "";
+		long[] latencies = new long[ops];
+		for (int capacity : new int[] {0, 1024}) {
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree t = new AVLTree();
+				t.setNodePool(capacity);
+				for (int i = 0; i < n; i++)
+					t.insert(incoming[i], info);
+				usedHeap(); // collects before measuring
+				long before = allocatedBytes();
+				for (int i = 0; i < ops; i++) {
+					long start = System.nanoTime();
+					t.insert(incoming[n + i], info);
+					t.delete(incoming[i]); // the oldest key leaves the window
+					latencies[i] = System.nanoTime() - start;
+				}
+				long bytes = allocatedBytes() - before;
+				if (round == WARMUP_ROUNDS) {
+					Arrays.sort(latencies);
+					System.out.println("pool of " + capacity + ": " + bytes / (2.0 * ops) + " bytes/op, median "
+							+ latencies[ops / 2] + " ns, p99 " + latencies[ops - ops / 100] + " ns per insert and delete, size " + t.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * static void splitJoin()
+	 *
+	 * prints the bytes allocated and the time per split of a 1M keys tree at a random key,
+	 * followed by the join that puts the tree back together.
+	 * then splits at random keys that are not in the tree, by inserting the key and splitting at it
+	 * and by splitAt, each followed by a join with the key and its delete.
+	 */
+	static void splitJoin() {
+		System.out.println("split and join:");
+		int n = 1000000;
+		int ops = 200000;
+		int[] keys = new int[n];
+		String[] infos = new String[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = 2 * i;
+			infos[i] = "";
+		}
+		java.util.Random random = new java.util.Random(n);
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			AVLTree t = AVLTree.fromSorted(keys, infos);
+			usedHeap(); // collects before measuring
+			long before = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < ops; i++) {
+				int x = keys[random.nextInt(n)];
+				AVLTree[] parts = t.split(x);
+				parts[0].join(parts[0].new AVLNode(x, ""), parts[1]);
+				t = parts[0];
+			}
+			long time = System.nanoTime() - start;
+			long bytes = allocatedBytes() - before;
+			if (round == WARMUP_ROUNDS)
+				System.out.println(bytes / ops + " bytes, " + time / ops + " ns per split and join, size " + t.size());
+		}
+		for (boolean splitAt : new boolean[] {false, true}) {
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				AVLTree t = AVLTree.fromSorted(keys, infos);
+				long start = System.nanoTime();
+				for (int i = 0; i < ops; i++) {
+					int x = keys[random.nextInt(n)] + 1; // odd keys are not in the tree
+					AVLTree[] parts;
+					if (splitAt)
+						parts = t.splitAt(x);
+					else {
+						t.insert(x, "");
+						parts = t.split(x);
+					}
+					parts[0].join(parts[0].new AVLNode(x, ""), parts[1]);
+					t = parts[0];
+					t.delete(x);
+				}
+				long time = System.nanoTime() - start;
+				if (round == WARMUP_ROUNDS)
+					System.out.println((splitAt ? "splitAt" : "insert and split") + " at a missing key: "
+							+ time / ops + " ns per split, join and delete, size " + t.size());
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		allocationRate();
+		memoryPerEntry();
+		offHeapFootprint();
+		pathTreeComparison();
+		sizeMaintenance();
+		bulkLoad();
+		batchInsert();
+		setOperations();
+		parallelSetOperations();
+		rankAndSelect();
+		exportCost();
+		chunkedExport();
+		parallelExport();
+		keyStream();
+		extremes();
+		fingerSearch();
+		rangeAggregates();
+		weakChurn();
+		nodePool();
+		splitJoin();
+	}
+}
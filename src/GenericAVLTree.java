@@ -0,0 +1,645 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ *
+ * GenericAVLTree
+ *
+ * An implementation of an AVL Tree with distinct keys of any type, ordered by a Comparator,
+ * and infos of any type, with the same operations as AVLTree.
+ * The virtual leaf is a single shared node that is recognized by identity,
+ * so no key value is reserved.
+ * LongAVLTree is the same tree specialised for primitive long keys, kept as a copy on purpose,
+ * so a fix to the rebalancing of one of the two belongs in the other as well.
+ *
+ */
+
+public class GenericAVLTree<K, V> {
+	// the virtual leaf of all the trees, its fields are never changed
+	@SuppressWarnings("rawtypes")
+	private static final Node VIRTUAL_LEAF = new Node<>(null, null, -1, 0);
+
+	private final Comparator<? super K> comparator;
+	private Node<K, V> root;
+
+
+	/**
+	 * public GenericAVLTree(Comparator<? super K> comparator)
+	 *
+	 * constructs an empty GenericAVLTree whose keys are ordered by the given comparator
+	 */
+	public GenericAVLTree(Comparator<? super K> comparator) {
+		this.comparator = comparator;
+		this.root = leaf();
+	}
+
+	/**
+	 * private static <K, V> Node<K, V> leaf()
+	 *
+	 * returns the shared virtual leaf.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <K, V> Node<K, V> leaf() {
+		return VIRTUAL_LEAF;
+	}
+
+
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == VIRTUAL_LEAF;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return this.root.size; // the virtual leaf's size is 0
+	}
+
+	/**
+	 * public int getRank()
+	 *
+	 * Returns the rank of the tree, -1 if the tree is empty.
+	 */
+	public int getRank() {
+		return this.root.height; // the virtual leaf's height is -1
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V min() {
+		if (this.root == VIRTUAL_LEAF)
+			return null;
+		Node<K, V> node = this.root;
+		while (node.left != VIRTUAL_LEAF)  // stops on the virtual leaf's parent
+			node = node.left;
+		return node.info;
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V max() {
+		if (this.root == VIRTUAL_LEAF)
+			return null;
+		Node<K, V> node = this.root;
+		while (node.right != VIRTUAL_LEAF)  // stops on the virtual leaf's parent
+			node = node.right;
+		return node.info;
+	}
+
+	/**
+	 * public V search(K k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public V search(K k) {
+		Node<K, V> node = treePosition(k);
+		if (node == null || this.comparator.compare(k, node.key) != 0)
+			return null;
+		return node.info;
+	}
+
+	/**
+	 * private Node<K, V> treePosition(K k)
+	 *
+	 * returns the node with the given key if it exists in the tree,
+	 * otherwise returns the parent of the place to insert the key (null if the tree is empty).
+	 */
+	private Node<K, V> treePosition(K k) {
+		Node<K, V> x = this.root;
+		Node<K, V> y = null;
+		while (x != VIRTUAL_LEAF) { // until encounters a virtual leaf
+			y = x;
+			int cmp = this.comparator.compare(k, x.key);
+			if (cmp == 0)
+				return x;
+			else if (cmp < 0)
+				x = x.left;
+			else
+				x = x.right;
+		}
+		return y;
+	}
+
+	/**
+	 * private int rankDiff(Node<K, V> p, Node<K, V> c)
+	 *
+	 * returns the rank difference between the parent p and its child c.
+	 */
+	private int rankDiff(Node<K, V> p, Node<K, V> c) {
+		return p.height - c.height;
+	}
+
+	/**
+	 * private void updateSize(Node<K, V> n)
+	 *
+	 * recomputes the size of a single node from its children.
+	 */
+	private void updateSize(Node<K, V> n) {
+		n.size = n.left.size + n.right.size + 1;
+	}
+
+	/**
+	 * private void addToSizes(Node<K, V> n, int delta)
+	 *
+	 * adds delta to the size of n and all its ancestors.
+	 */
+	private void addToSizes(Node<K, V> n, int delta) {
+		while (n != null) {
+			n.size += delta;
+			n = n.parent;
+		}
+	}
+
+	/**
+	 * private void replaceChild(Node<K, V> p, Node<K, V> oldChild, Node<K, V> newChild)
+	 *
+	 * sets newChild in the place of p's child oldChild, or as the root if p is null.
+	 */
+	private void replaceChild(Node<K, V> p, Node<K, V> oldChild, Node<K, V> newChild) {
+		if (newChild != VIRTUAL_LEAF)
+			newChild.parent = p;
+		if (p == null)
+			this.root = newChild;
+		else if (p.left == oldChild)
+			p.left = newChild;
+		else
+			p.right = newChild;
+	}
+
+	/**
+	 * private int rightRotate(Node<K, V> z)
+	 *
+	 * rotates the edge between z and its left child n, and fixes the sizes of both.
+	 * The method returns 1 for rotation
+	 */
+	private int rightRotate(Node<K, V> z) {
+		Node<K, V> n = z.left;
+		Node<K, V> b = n.right;
+		replaceChild(z.parent, z, n);
+		z.left = b;
+		if (b != VIRTUAL_LEAF)
+			b.parent = z;
+		n.right = z;
+		z.parent = n;
+		n.size = z.size;
+		updateSize(z);
+		return 1;
+	}
+
+	/**
+	 * private int leftRotate(Node<K, V> z)
+	 *
+	 * rotates the edge between z and its right child n, and fixes the sizes of both.
+	 * The method returns 1 for rotation
+	 */
+	private int leftRotate(Node<K, V> z) {
+		Node<K, V> n = z.right;
+		Node<K, V> b = n.left;
+		replaceChild(z.parent, z, n);
+		z.right = b;
+		if (b != VIRTUAL_LEAF)
+			b.parent = z;
+		n.left = z;
+		z.parent = n;
+		n.size = z.size;
+		updateSize(z);
+		return 1;
+	}
+
+	/**
+	 * private int rebalanceInsert(Node<K, V> p)
+	 *
+	 * rebalances the tree bottom up, starting at p whose child's rank was raised.
+	 * The method returns sum of rebalancing operations that were taken, counted as in AVLTree.
+	 */
+	private int rebalanceInsert(Node<K, V> p) {
+		int num = 0;
+		while (p != null) {
+			Node<K, V> l = p.left;
+			Node<K, V> r = p.right;
+			if (rankDiff(p, l) == 0) { // left child focus
+				if (rankDiff(p, r) == 1) { // 0,1 needs promotion
+					p.height++;
+					num++;
+					p = p.parent;
+					continue;
+				}
+				if (rankDiff(l, l.left) == 1 && rankDiff(l, l.right) == 2) { // 1,2 right rotation
+					p.height--;
+					return num + 1 + rightRotate(p);
+				}
+				if (rankDiff(l, l.left) == 2) { // 2,1 leftRight rotation
+					Node<K, V> c = l.right;
+					l.height--;
+					p.height--;
+					c.height++;
+					return num + 3 + leftRotate(l) + rightRotate(p);
+				}
+				// 1,1 can't follow an insertion, only a join, the rotated subtree grows
+				l.height++;
+				num += 1 + rightRotate(p);
+				p = l.parent;
+			}
+			else if (rankDiff(p, r) == 0) { // right child focus
+				if (rankDiff(p, l) == 1) { // 1,0 needs promotion
+					p.height++;
+					num++;
+					p = p.parent;
+					continue;
+				}
+				if (rankDiff(r, r.left) == 2 && rankDiff(r, r.right) == 1) { // 2,1 left rotation
+					p.height--;
+					return num + 1 + leftRotate(p);
+				}
+				if (rankDiff(r, r.right) == 2) { // 1,2 rightLeft rotation
+					Node<K, V> c = r.left;
+					r.height--;
+					p.height--;
+					c.height++;
+					return num + 3 + rightRotate(r) + leftRotate(p);
+				}
+				// 1,1 can't follow an insertion, only a join, the rotated subtree grows
+				r.height++;
+				num += 1 + leftRotate(p);
+				p = r.parent;
+			}
+			else
+				return num; // no more rebalancing is needed
+		}
+		return num;
+	}
+
+	/**
+	 * private int rebalanceDelete(Node<K, V> p)
+	 *
+	 * rebalances the tree bottom up, starting at p whose child's rank was lowered.
+	 * The method returns sum of rebalancing operations that were taken, counted as in AVLTree.
+	 */
+	private int rebalanceDelete(Node<K, V> p) {
+		int num = 0;
+		while (p != null) {
+			Node<K, V> l = p.left;
+			Node<K, V> r = p.right;
+			if (rankDiff(p, l) == 2 && rankDiff(p, r) == 2) { // 2,2 needs demotion
+				p.height--;
+				num++;
+				p = p.parent;
+			}
+			else if (rankDiff(p, l) == 3) { // 3,1
+				if (rankDiff(r, r.left) == 1 && rankDiff(r, r.right) == 1) { // 1,1
+					p.height--;
+					r.height++;
+					return num + 2 + leftRotate(p);
+				}
+				if (rankDiff(r, r.left) == 2) { // 2,1
+					p.height -= 2;
+					num += 2 + leftRotate(p);
+					p = r.parent;
+				}
+				else { // 1,2
+					Node<K, V> c = r.left;
+					p.height -= 2;
+					r.height--;
+					c.height++;
+					num += 4 + rightRotate(r) + leftRotate(p);
+					p = c.parent;
+				}
+			}
+			else if (rankDiff(p, r) == 3) { // 1,3
+				if (rankDiff(l, l.left) == 1 && rankDiff(l, l.right) == 1) { // 1,1
+					p.height--;
+					l.height++;
+					return num + 2 + rightRotate(p);
+				}
+				if (rankDiff(l, l.right) == 2) { // 1,2
+					p.height -= 2;
+					num += 2 + rightRotate(p);
+					p = l.parent;
+				}
+				else { // 2,1
+					Node<K, V> c = l.right;
+					p.height -= 2;
+					l.height--;
+					c.height++;
+					num += 4 + leftRotate(l) + rightRotate(p);
+					p = c.parent;
+				}
+			}
+			else
+				return num; // no more rebalancing is needed
+		}
+		return num;
+	}
+
+	/**
+	 * public int insert(K k, V i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(K k, V i) {
+		Node<K, V> y = treePosition(k);
+		int cmp = (y == null) ? 0 : this.comparator.compare(k, y.key);
+		if (y != null && cmp == 0) // the key already exists in tree
+			return -1;
+		Node<K, V> n = new Node<>(k, i, 0, 1);
+		n.parent = y;
+		if (y == null) { // the tree is empty
+			this.root = n;
+			return 0;
+		}
+		if (cmp < 0)
+			y.left = n;
+		else
+			y.right = n;
+		addToSizes(y, 1);
+		return rebalanceInsert(y);
+	}
+
+	/**
+	 * public int delete(K k)
+	 *
+	 * deletes an item with key k from the tree, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(K k) {
+		Node<K, V> n = treePosition(k);
+		if (n == null || this.comparator.compare(k, n.key) != 0) // not in tree
+			return -1;
+		if (n.left != VIRTUAL_LEAF && n.right != VIRTUAL_LEAF) { // two children, the successor's item moves into n
+			Node<K, V> m = n.right;
+			while (m.left != VIRTUAL_LEAF)
+				m = m.left;
+			n.key = m.key;
+			n.info = m.info;
+			n = m;
+		}
+		Node<K, V> child = (n.left != VIRTUAL_LEAF) ? n.left : n.right;
+		Node<K, V> y = n.parent;
+		replaceChild(y, n, child);
+		addToSizes(y, -1);
+		return rebalanceDelete(y);
+	}
+
+	/**
+	 * private Node<K, V> successor(Node<K, V> n)
+	 *
+	 * returns the successor of n, or null if n holds the largest key.
+	 */
+	private Node<K, V> successor(Node<K, V> n) {
+		if (n.right != VIRTUAL_LEAF) {
+			n = n.right;
+			while (n.left != VIRTUAL_LEAF)
+				n = n.left;
+			return n;
+		}
+		Node<K, V> parent = n.parent;
+		while (parent != null && parent.right == n) { // n is a right child
+			n = parent;
+			parent = n.parent;
+		}
+		return parent;
+	}
+
+	/**
+	 * private Node<K, V> first()
+	 *
+	 * returns the node with the smallest key, or null if the tree is empty.
+	 */
+	private Node<K, V> first() {
+		if (this.root == VIRTUAL_LEAF)
+			return null;
+		Node<K, V> n = this.root;
+		while (n.left != VIRTUAL_LEAF)
+			n = n.left;
+		return n;
+	}
+
+	/**
+	 * public List<K> keysToList()
+	 *
+	 * Returns a sorted list which contains all keys in the tree,
+	 * or an empty list if the tree is empty.
+	 */
+	public List<K> keysToList() {
+		List<K> list = new ArrayList<>(this.size());
+		for (Node<K, V> n = first(); n != null; n = successor(n))
+			list.add(n.key);
+		return list;
+	}
+
+	/**
+	 * public List<V> infoToList()
+	 *
+	 * Returns a list which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty list if the tree is empty.
+	 */
+	public List<V> infoToList() {
+		List<V> list = new ArrayList<>(this.size());
+		for (Node<K, V> n = first(); n != null; n = successor(n))
+			list.add(n.info);
+		return list;
+	}
+
+	/**
+	 * private GenericAVLTree<K, V> subtree(Node<K, V> n)
+	 *
+	 * detaches the subtree rooted at n and returns it as a tree.
+	 */
+	private GenericAVLTree<K, V> subtree(Node<K, V> n) {
+		GenericAVLTree<K, V> t = new GenericAVLTree<>(this.comparator);
+		if (n != VIRTUAL_LEAF)
+			n.parent = null;
+		t.root = n;
+		return t;
+	}
+
+	/**
+	 * public GenericAVLTree<K, V>[] split(K x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two AVL trees with this tree's comparator. keys(t1) < x < keys(t2).
+	 * The nodes on the path to x are reused as the join nodes. This tree is left empty.
+	 * precondition: search(x) != null
+	 */
+	@SuppressWarnings("unchecked")
+	public GenericAVLTree<K, V>[] split(K x) {
+		Node<K, V> n = treePosition(x);
+		GenericAVLTree<K, V> t1 = subtree(n.left); // tree with smaller keys
+		GenericAVLTree<K, V> t2 = subtree(n.right); // tree with bigger keys
+		Node<K, V> cur = n;
+		Node<K, V> parent = n.parent;
+		while (parent != null) {
+			Node<K, V> next = parent.parent;
+			if (parent.right == cur) // cur is a right child
+				t1.joinNode(parent, subtree(parent.left));
+			else
+				t2.joinNode(parent, subtree(parent.right));
+			cur = parent;
+			parent = next;
+		}
+		this.root = leaf();
+		GenericAVLTree<K, V>[] result = (GenericAVLTree<K, V>[])new GenericAVLTree<?, ?>[] {t1, t2};
+		return result;
+	}
+
+	/**
+	 * public int join(K k, V i, GenericAVLTree<K, V> t)
+	 *
+	 * joins t and a new item with key k and info i with the tree, t is left empty.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys().
+	 */
+	public int join(K k, V i, GenericAVLTree<K, V> t) {
+		int res = Math.abs(this.getRank() - t.getRank()) + 1;
+		joinNode(new Node<>(k, i, 0, 1), t);
+		return res;
+	}
+
+	/**
+	 * private void joinNode(Node<K, V> x, GenericAVLTree<K, V> t)
+	 *
+	 * joins t and the detached node x with the tree, t is left empty.
+	 */
+	private void joinNode(Node<K, V> x, GenericAVLTree<K, V> t) {
+		Node<K, V> thisRoot = this.root;
+		Node<K, V> otherRoot = t.root;
+		t.root = leaf();
+		Node<K, V> leftRoot = otherRoot;
+		Node<K, V> rightRoot = thisRoot;
+		if (otherRoot == VIRTUAL_LEAF ? thisRoot != VIRTUAL_LEAF && this.comparator.compare(x.key, thisRoot.key) > 0
+				: this.comparator.compare(otherRoot.key, x.key) > 0) {
+			leftRoot = thisRoot;
+			rightRoot = otherRoot;
+		}
+		int leftRank = leftRoot.height;
+		int rightRank = rightRoot.height;
+		if (Math.abs(leftRank - rightRank) <= 1) { // x becomes the root
+			link(x, leftRoot, rightRoot);
+			x.parent = null;
+			this.root = x;
+			return;
+		}
+		Node<K, V> c;
+		if (leftRank < rightRank) { // walk down the left spine of the right tree
+			c = rightRoot;
+			while (c.left.height > leftRank + 1)
+				c = c.left;
+			link(x, leftRoot, c.left);
+			c.left = x;
+			addToSizes(c, leftRoot.size + 1);
+			this.root = rightRoot;
+		}
+		else { // walk down the right spine of the left tree
+			c = leftRoot;
+			while (c.right.height > rightRank + 1)
+				c = c.right;
+			link(x, c.right, rightRoot);
+			c.right = x;
+			addToSizes(c, rightRoot.size + 1);
+			this.root = leftRoot;
+		}
+		x.parent = c;
+		rebalanceInsert(c);
+	}
+
+	/**
+	 * private void link(Node<K, V> x, Node<K, V> l, Node<K, V> r)
+	 *
+	 * sets l and r as the children of x, and fixes x's height and size.
+	 */
+	private void link(Node<K, V> x, Node<K, V> l, Node<K, V> r) {
+		x.left = l;
+		x.right = r;
+		if (l != VIRTUAL_LEAF)
+			l.parent = x;
+		if (r != VIRTUAL_LEAF)
+			r.parent = x;
+		x.height = Math.max(l.height, r.height) + 1;
+		x.size = l.size + r.size + 1;
+	}
+
+
+	/**
+	 * void checkInvariants()
+	 *
+	 * walks the whole tree and throws an IllegalStateException if it is broken: a key out of order,
+	 * a wrong parent, size or height, a rank rule that doesn't hold or a changed virtual leaf.
+	 * Runs in O(n), for InvariantTester.
+	 */
+	void checkInvariants() {
+		if (VIRTUAL_LEAF.height != -1 || VIRTUAL_LEAF.size != 0)
+			throw new IllegalStateException("the virtual leaf was changed");
+		if (this.root.parent != null)
+			throw new IllegalStateException("the root has a parent");
+		checkSubtree(this.root, null, null, null);
+	}
+
+	/**
+	 * private void checkSubtree(Node<K, V> n, Node<K, V> parent, Node<K, V> lo, Node<K, V> hi)
+	 *
+	 * checks the subtree of n for checkInvariants, its keys must be between the keys of lo and hi (null for no bound).
+	 */
+	private void checkSubtree(Node<K, V> n, Node<K, V> parent, Node<K, V> lo, Node<K, V> hi) {
+		if (n == VIRTUAL_LEAF)
+			return;
+		if (n.parent != parent)
+			throw new IllegalStateException("wrong parent of " + n.key);
+		if ((lo != null && this.comparator.compare(n.key, lo.key) <= 0) || (hi != null && this.comparator.compare(n.key, hi.key) >= 0))
+			throw new IllegalStateException("key " + n.key + " is out of order");
+		checkSubtree(n.left, n, lo, n);
+		checkSubtree(n.right, n, n, hi);
+		if (n.size != n.left.size + n.right.size + 1)
+			throw new IllegalStateException("wrong size of " + n.key);
+		int leftDiff = n.height - n.left.height;
+		int rightDiff = n.height - n.right.height;
+		if (Math.min(leftDiff, rightDiff) != 1 || Math.max(leftDiff, rightDiff) > 2) // 1,1, 1,2 or 2,1
+			throw new IllegalStateException("the rank rule doesn't hold at " + n.key);
+	}
+
+
+	/**
+	 * private static class Node
+	 *
+	 * a node of the tree, the parent of a root is null.
+	 */
+	private static final class Node<K, V> {
+		private K key;
+		private V info;
+		private Node<K, V> parent;
+		private Node<K, V> left;
+		private Node<K, V> right;
+		private int height;
+		private int size;
+
+		Node(K key, V info, int height, int size) {
+			this.key = key;
+			this.info = info;
+			this.left = leaf(); // null while creating the virtual leaf itself
+			this.right = leaf();
+			this.height = height;
+			this.size = size;
+		}
+	}
+}
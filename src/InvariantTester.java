@@ -0,0 +1,1211 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ *
+ * InvariantTester
+ *
+ * Random operations on the trees, compared with a TreeMap. After every operation
+ * the tree's checkInvariants walks it and checks the order of the keys, the rank rules,
+ * the sizes and the parent links, and the invariants of the tree's modes.
+ * It is in the default package with the trees, since the classes of the Tests package can't see them.
+ * main prints an error for every test that fails, as Tests.MainTester does.
+ *
+ */
+
+public class InvariantTester {
+
+	static final int OPERATIONS = 3000;
+	static final int KEYS = 1000; // the keys are drawn from [0, KEYS)
+	static final int LARGE = 100000; // above the thresholds of the parallel paths
+
+	public static void main(String[] args) {
+		run("AVLTree", InvariantTester::avlTree);
+		run("AVLTree.fromSorted", InvariantTester::fromSorted);
+		run("AVLTree.insertAll", InvariantTester::insertAll);
+		run("AVLTree set operations", InvariantTester::setOperations);
+		run("AVLTree.range", InvariantTester::range);
+		run("AVLTree rank and select", InvariantTester::rankSelect);
+		run("AVLTree.keysInto", InvariantTester::chunkedExport);
+		run("AVLTree parallel export", InvariantTester::parallelExport);
+		run("AVLTree.keys", InvariantTester::keyStream);
+		run("AVLTree.pollFirst", InvariantTester::poll);
+		run("AVLTree.aggregate", InvariantTester::aggregates);
+		run("AVLTree.setWeak", InvariantTester::weakTree);
+		run("AVLTree.setNodePool", InvariantTester::nodePool);
+		run("AVLTree.split", InvariantTester::splitNodes);
+		run("AVLTree.splitAt", InvariantTester::splitAt);
+		run("ArrayAVLTree", InvariantTester::arrayTree);
+		run("OffHeapAVLTree", InvariantTester::offHeapTree);
+		run("LongAVLTree", InvariantTester::longTree);
+		run("GenericAVLTree", InvariantTester::genericTree);
+		run("PathAVLTree", InvariantTester::pathTree);
+		System.out.println("Done!");
+	}
+
+	/**
+	 * static void run(String name, BooleanSupplier test)
+	 *
+	 * runs a test and prints an error if it returns false or finds a broken invariant.
+	 */
+	static void run(String name, BooleanSupplier test) {
+		try {
+			if (!test.getAsBoolean())
+				System.out.println("Error in " + name);
+		}
+		catch (IllegalStateException e) {
+			System.out.println("Error in " + name + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * static boolean same(int[] keys, String[] infos, Map<Integer, String> model)
+	 *
+	 * returns whether the items are the items of the model, in the order of the keys.
+	 */
+	static boolean same(int[] keys, String[] infos, Map<Integer, String> model) {
+		if (keys.length != model.size() || infos.length != model.size())
+			return false;
+		int i = 0;
+		for (Map.Entry<Integer, String> e : model.entrySet()) {
+			if (keys[i] != e.getKey() || !infos[i].equals(e.getValue()))
+				return false;
+			i++;
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean same(AVLTree t, TreeMap<Integer, String> model)
+	 *
+	 * checks the invariants of t and returns whether it holds the items of the model.
+	 */
+	static boolean same(AVLTree t, TreeMap<Integer, String> model) {
+		t.checkInvariants();
+		if (t.size() != model.size() || !same(t.keysToArray(), t.infoToArray(), model))
+			return false;
+		if (model.isEmpty())
+			return t.empty() && t.min() == null && t.max() == null;
+		return t.min().equals(model.firstEntry().getValue()) && t.max().equals(model.lastEntry().getValue());
+	}
+
+	/**
+	 * static boolean avlTree()
+	 *
+	 * runs avlTree(finger) with every finger.
+	 */
+	static boolean avlTree() {
+		for (AVLTree.Finger finger : AVLTree.Finger.values())
+			if (!avlTree(finger))
+				return false;
+		return true;
+	}
+
+	/**
+	 * static boolean avlTree(AVLTree.Finger finger)
+	 *
+	 * random inserts, deletes, searches, splits and joins on an AVLTree that searches from the given finger,
+	 * half of the keys near the previous one.
+	 */
+	static boolean avlTree(AVLTree.Finger finger) {
+		Random r = new Random(0);
+		TreeMap<Integer, String> model = new TreeMap<>();
+		AVLTree t = new AVLTree();
+		t.setFinger(finger);
+		int k = 0;
+		for (int op = 0; op < OPERATIONS; op++) {
+			k = r.nextBoolean() ? r.nextInt(KEYS) : Math.floorMod(k + r.nextInt(11) - 5, KEYS);
+			int kind = r.nextInt(100);
+			if (kind < 48) {
+				if ((t.insert(k, "i" + k) == -1) != model.containsKey(k))
+					return false;
+				model.put(k, "i" + k);
+			}
+			else if (kind < 96) {
+				if ((t.delete(k) == -1) != (model.remove(k) == null))
+					return false;
+			}
+			else if (!model.isEmpty()) { // split at a key of the tree and join back with it
+				int x = model.ceilingKey(k) != null ? model.ceilingKey(k) : model.lastKey();
+				AVLTree[] parts = t.split(x);
+				if (!same(parts[0], new TreeMap<>(model.headMap(x))) || !same(parts[1], new TreeMap<>(model.tailMap(x, false))))
+					return false;
+				parts[0].join(parts[0].new AVLNode(x, "i" + x), parts[1]);
+				t = parts[0];
+			}
+			int q = r.nextInt(KEYS);
+			if (!same(t, model) || !String.valueOf(model.get(q)).equals(String.valueOf(t.search(q))))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * static TreeMap<Integer, String> evenItems(int n)
+	 *
+	 * returns the items with the keys 0, 2, ..., 2*(n-1).
+	 */
+	static TreeMap<Integer, String> evenItems(int n) {
+		TreeMap<Integer, String> items = new TreeMap<>();
+		for (int i = 0; i < n; i++)
+			items.put(2 * i, "i" + 2 * i);
+		return items;
+	}
+
+	/**
+	 * static int[] keys(Map<Integer, String> items)
+	 *
+	 * returns the keys of the items, in order.
+	 */
+	static int[] keys(Map<Integer, String> items) {
+		return items.keySet().stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * static String[] infos(Map<Integer, String> items)
+	 *
+	 * returns the infos of the items, in the order of their keys.
+	 */
+	static String[] infos(Map<Integer, String> items) {
+		return items.values().toArray(new String[0]);
+	}
+
+	/**
+	 * static boolean fromSorted()
+	 *
+	 * builds trees of several sizes by fromSorted, sequentially and in parallel,
+	 * changes them by random inserts and deletes, and checks that keys out of order and -1 are rejected
+	 * while other negative keys are not.
+	 */
+	static boolean fromSorted() {
+		Random r = new Random(7);
+		for (int n : new int[] {0, 1, 2, 7, KEYS, LARGE}) {
+			for (boolean parallel : new boolean[] {false, true}) {
+				TreeMap<Integer, String> model = evenItems(n);
+				AVLTree t = AVLTree.fromSorted(keys(model), infos(model), parallel);
+				if (!same(t, model))
+					return false;
+				for (int op = 0; op < 200; op++) {
+					int k = r.nextInt(2 * n + 2);
+					if (r.nextBoolean()) {
+						t.insert(k, "i" + k);
+						model.putIfAbsent(k, "i" + k);
+					}
+					else {
+						t.delete(k);
+						model.remove(k);
+					}
+				}
+				if (!same(t, model))
+					return false;
+			}
+		}
+		for (int[] keys : new int[][] {{1, 1}, {2, 1}, {0, 3, 2}, {-3, -1, 4}}) {
+			try {
+				AVLTree.fromSorted(keys, new String[keys.length]);
+				return false;
+			}
+			catch (IllegalArgumentException e) {
+				// keys that are not sorted, not distinct or -1
+			}
+		}
+		TreeMap<Integer, String> model = new TreeMap<>(Map.of(-7, "a", -2, "b", 0, "c", 5, "d"));
+		return same(AVLTree.fromSorted(keys(model), infos(model)), model); // other negative keys are allowed
+	}
+
+	/**
+	 * static boolean insertAll()
+	 *
+	 * adds random batches to trees of several sizes by insertAll, small batches that are united
+	 * with the tree and large ones that are merged with it, with repeated, negative keys and keys of the tree.
+	 * Checks that -1 is rejected and that both paths take their nodes from the node pool.
+	 */
+	static boolean insertAll() {
+		Random r = new Random(8);
+		for (int n : new int[] {0, 1, KEYS, LARGE}) {
+			TreeMap<Integer, String> model = evenItems(n);
+			AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+			for (int batch = 0; batch < 20; batch++) {
+				int m = r.nextBoolean() ? r.nextInt(20) : r.nextInt(2 * n + 2);
+				int[] keys = new int[m];
+				String[] infos = new String[m];
+				for (int i = 0; i < m; i++) {
+					keys[i] = (r.nextInt(8) == 0) ? -2 - r.nextInt(2 * n + 2) : r.nextInt(2 * n + 2);
+					infos[i] = "b" + batch + "." + i; // the first item of a repeated key is inserted
+					model.putIfAbsent(keys[i], infos[i]);
+				}
+				if (t.insertAll(keys, infos) < 0 || !same(t, model))
+					return false;
+			}
+		}
+		
+		TreeMap<Integer, String> model = evenItems(KEYS);
+		AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+		try {
+			t.insertAll(new int[] {3, -1}, new String[] {"a", "b"});
+			return false;
+		}
+		catch (IllegalArgumentException e) {
+			if (!same(t, model))
+				return false;
+		}
+		t.setNodePool(3 * KEYS);
+		Set<AVLTree.IAVLNode> old = new HashSet<>();
+		for (int k : model.keySet())
+			old.add(nodeOf(t, k));
+		int[] odd = new int[KEYS];
+		String[] oddInfos = new String[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			odd[i] = 2 * i + 1;
+			oddInfos[i] = "o" + i;
+			model.put(odd[i], oddInfos[i]);
+		}
+		t.insertAll(odd, oddInfos); // as large as the tree, so it is rebuilt from the old nodes
+		int reused = 0;
+		for (int k : model.keySet())
+			if (old.contains(nodeOf(t, k)))
+				reused++;
+		if (reused != KEYS || !same(t, model))
+			return false;
+		List<AVLTree.IAVLNode> deleted = new ArrayList<>();
+		for (int k = 0; k < 10; k++) {
+			deleted.add(nodeOf(t, k));
+			t.delete(k);
+			model.remove(k);
+		}
+		int[] small = new int[10];
+		for (int i = 0; i < 10; i++) {
+			small[i] = 3 * KEYS + i;
+			model.put(small[i], "s");
+		}
+		t.insertAll(small, new String[] {"s", "s", "s", "s", "s", "s", "s", "s", "s", "s"}); // united
+		for (int k : small)
+			if (!deleted.contains(nodeOf(t, k)))
+				return false;
+		return same(t, model);
+	}
+
+	/**
+	 * static TreeMap<Integer, String> randomItems(Random r, int n, int range, String prefix)
+	 *
+	 * returns n items with distinct random keys from [0, range), or all the keys if n >= range.
+	 */
+	static TreeMap<Integer, String> randomItems(Random r, int n, int range, String prefix) {
+		TreeMap<Integer, String> items = new TreeMap<>();
+		while (items.size() < Math.min(n, range)) {
+			int k = r.nextInt(range);
+			items.put(k, prefix + k);
+		}
+		return items;
+	}
+
+	/**
+	 * static boolean setOperations()
+	 *
+	 * applies union, intersection and difference to random pairs of trees of several sizes,
+	 * including empty and single item trees and a tree with itself, and checks that the argument is emptied.
+	 * every pair is also run on a fork-join pool with a small threshold, and half of the trees have a node pool.
+	 * Checks that intersection and difference recycle the nodes they drop.
+	 */
+	static boolean setOperations() {
+		Random r = new Random(9);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		int[] sizes = {0, 1, 2, 7, KEYS, LARGE};
+		for (int n : sizes) {
+			for (int m : sizes) {
+				for (int task = 0; task < 6; task++) {
+					char op = "uid".charAt(task % 3);
+					ForkJoinPool on = (task < 3) ? null : pool; // sequential, then parallel
+					int threshold = (task < 3) ? Integer.MAX_VALUE : 64;
+					int range = 2 * Math.max(n, m) + 2;
+					TreeMap<Integer, String> model = randomItems(r, n, range, "a");
+					TreeMap<Integer, String> other = randomItems(r, m, range, "b");
+					AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+					AVLTree u = AVLTree.fromSorted(keys(other), infos(other));
+					if (r.nextBoolean())
+						t.setNodePool(r.nextInt(2 * m + 2));
+					if (op == 'u') {
+						t.union(u, on, threshold);
+						for (Map.Entry<Integer, String> e : other.entrySet())
+							model.putIfAbsent(e.getKey(), e.getValue());
+					}
+					else if (op == 'i') {
+						t.intersection(u, on, threshold);
+						model.keySet().retainAll(other.keySet());
+					}
+					else {
+						t.difference(u, on, threshold);
+						model.keySet().removeAll(other.keySet());
+					}
+					if (!u.empty() || !same(t, model))
+						return false;
+				}
+			}
+		}
+		TreeMap<Integer, String> model = evenItems(KEYS);
+		AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+		t.union(t);
+		t.intersection(t, pool, 64);
+		if (!same(t, model))
+			return false;
+		t.difference(t);
+		pool.shutdown();
+		if (!same(t, new TreeMap<>()))
+			return false;
+		
+		for (char op : new char[] {'i', 'd'}) {
+			for (int m : new int[] {1, KEYS / 2}) { // one descent, and splits and joins
+				model = evenItems(KEYS);
+				TreeMap<Integer, String> other = new TreeMap<>();
+				for (int k = 0; other.size() < m; k += 4)
+					other.put(k, "b" + k);
+				t = AVLTree.fromSorted(keys(model), infos(model));
+				AVLTree u = AVLTree.fromSorted(keys(other), infos(other));
+				t.setNodePool(2 * KEYS);
+				Set<AVLTree.IAVLNode> dropped = new HashSet<>();
+				for (int k : other.keySet())
+					dropped.add(nodeOf(u, k)); // the result's nodes are t's
+				if (op == 'i') {
+					for (int k : model.keySet())
+						if (!other.containsKey(k))
+							dropped.add(nodeOf(t, k));
+					t.intersection(u);
+					model.keySet().retainAll(other.keySet());
+				}
+				else {
+					for (int k : other.keySet())
+						dropped.add(nodeOf(t, k));
+					t.difference(u);
+					model.keySet().removeAll(other.keySet());
+				}
+				for (int i = 0; i < dropped.size(); i++) {
+					t.insert(2 * KEYS + i, "n");
+					model.put(2 * KEYS + i, "n");
+					if (!dropped.contains(nodeOf(t, 2 * KEYS + i)))
+						return false;
+				}
+				if (!same(t, model))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean range()
+	 *
+	 * compares range with the submaps of the model for random bounds of a changing tree,
+	 * including empty ranges, bounds out of the keys and from > to.
+	 */
+	static boolean range() {
+		Random r = new Random(11);
+		TreeMap<Integer, String> model = new TreeMap<>();
+		AVLTree t = new AVLTree();
+		for (int op = 0; op < OPERATIONS; op++) {
+			int k = r.nextInt(KEYS);
+			if (r.nextInt(3) > 0) {
+				t.insert(k, "i" + k);
+				model.putIfAbsent(k, "i" + k);
+			}
+			else {
+				t.delete(k);
+				model.remove(k);
+			}
+			int from = r.nextInt(KEYS + 20) - 10;
+			int to = from + r.nextInt(KEYS / 4) - 10;
+			PrimitiveIterator.OfInt it = t.range(from, to);
+			List<Integer> expected = (from > to) ? List.of() : List.copyOf(model.subMap(from, true, to, true).keySet());
+			for (int e : expected)
+				if (!it.hasNext() || it.nextInt() != e)
+					return false;
+			if (it.hasNext())
+				return false;
+			try {
+				it.nextInt();
+				return false;
+			}
+			catch (NoSuchElementException e) {
+				// the range is exhausted
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean rankSelect()
+	 *
+	 * compares rank, select and countRange with the model for random arguments of a changing tree,
+	 * including positions and bounds out of range.
+	 */
+	static boolean rankSelect() {
+		Random r = new Random(12);
+		TreeMap<Integer, String> model = new TreeMap<>();
+		AVLTree t = new AVLTree();
+		for (int op = 0; op < OPERATIONS; op++) {
+			int k = r.nextInt(KEYS);
+			if (r.nextInt(3) > 0) {
+				t.insert(k, "i" + k);
+				model.putIfAbsent(k, "i" + k);
+			}
+			else {
+				t.delete(k);
+				model.remove(k);
+			}
+			int q = r.nextInt(KEYS + 20) - 10;
+			if (t.rank(q) != model.headMap(q).size())
+				return false;
+			int i = r.nextInt(model.size() + 4) - 2;
+			int expected = (i < 0 || i >= model.size()) ? -1 : keys(model)[i];
+			if (t.select(i) != expected)
+				return false;
+			int to = q + r.nextInt(KEYS / 4) - 10;
+			if (t.countRange(q, to) != ((q > to) ? 0 : model.subMap(q, true, to, true).size()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean chunkedExport()
+	 *
+	 * exports trees of several sizes by keysInto and infoInto in chunks of random lengths and offsets,
+	 * and checks the results at the end of the keys and for arguments out of range.
+	 */
+	static boolean chunkedExport() {
+		Random r = new Random(14);
+		for (int n : new int[] {0, 1, 7, KEYS}) {
+			TreeMap<Integer, String> model = evenItems(n);
+			AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+			int[] keys = new int[n];
+			String[] infos = new String[n];
+			int rank = 0;
+			while (rank < n) {
+				int offset = r.nextInt(4);
+				int[] keyChunk = new int[offset + 1 + r.nextInt(50)];
+				String[] infoChunk = new String[keyChunk.length];
+				int copied = t.keysInto(keyChunk, offset, rank);
+				if (copied != Math.min(keyChunk.length - offset, n - rank) || t.infoInto(infoChunk, offset, rank) != copied)
+					return false;
+				System.arraycopy(keyChunk, offset, keys, rank, copied);
+				System.arraycopy(infoChunk, offset, infos, rank, copied);
+				rank += copied;
+			}
+			if (!same(keys, infos, model))
+				return false;
+			if (t.keysInto(new int[4], 0, n) != 0 || t.infoInto(new String[4], 4, 0) != 0)
+				return false;
+			for (int[] args : new int[][] {{-1, 0}, {5, 0}, {0, -1}}) {
+				try {
+					t.keysInto(new int[4], args[0], args[1]);
+					return false;
+				}
+				catch (IndexOutOfBoundsException e) {
+					// an offset out of dst or a negative rank
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean parallelExport()
+	 *
+	 * compares keysToArrayParallel and infoToArrayParallel with the model for trees of several sizes,
+	 * on the common pool and from inside a fork-join pool.
+	 */
+	static boolean parallelExport() {
+		Random r = new Random(15);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int n : new int[] {0, 1, KEYS, LARGE}) {
+			TreeMap<Integer, String> model = evenItems(n);
+			AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+			for (int op = 0; op < n / 4; op++) { // an unbalanced shape, not the built one
+				int k = 2 * r.nextInt(n);
+				t.delete(k);
+				model.remove(k);
+			}
+			if (!same(t.keysToArrayParallel(), t.infoToArrayParallel(), model))
+				return false;
+			if (!same(pool.submit(t::keysToArrayParallel).join(), pool.submit(t::infoToArrayParallel).join(), model))
+				return false;
+		}
+		pool.shutdown();
+		return true;
+	}
+
+	/**
+	 * static boolean keyStream()
+	 *
+	 * compares keys(), sequential and parallel, with the model for trees of several sizes,
+	 * and splits its spliterator recursively checking the sizes and the order of the parts.
+	 */
+	static boolean keyStream() {
+		for (int n : new int[] {0, 1, 2, 7, KEYS, LARGE}) {
+			TreeMap<Integer, String> model = evenItems(n);
+			AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+			int[] expected = keys(model);
+			if (!Arrays.equals(t.keys().toArray(), expected) || !Arrays.equals(t.keys().parallel().toArray(), expected))
+				return false;
+			Spliterator.OfInt s = t.keys().spliterator();
+			int flags = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.SIZED | Spliterator.SUBSIZED;
+			if ((s.characteristics() & flags) != flags)
+				return false;
+			int[] keys = new int[n];
+			if (splitInto(s, keys, 0) != n || !Arrays.equals(keys, expected))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * static int splitInto(Spliterator.OfInt s, int[] keys, int from)
+	 *
+	 * splits s down to parts of at most 16 keys, writes the keys of the parts in order into keys from keys[from],
+	 * and returns the number of keys written, or -1 if a part doesn't have its estimated size.
+	 */
+	static int splitInto(Spliterator.OfInt s, int[] keys, int from) {
+		long size = s.estimateSize();
+		Spliterator.OfInt prefix = (size > 16) ? s.trySplit() : null;
+		int count = 0;
+		if (prefix != null) {
+			count = splitInto(prefix, keys, from);
+			if (count < 0)
+				return -1;
+		}
+		else {
+			int[] i = {from};
+			s.forEachRemaining((int k) -> keys[i[0]++] = k);
+			return (i[0] - from == size) ? (int)size : -1;
+		}
+		int rest = splitInto(s, keys, from + count);
+		return (rest < 0 || count + rest != size) ? -1 : count + rest;
+	}
+
+	/**
+	 * static boolean poll()
+	 *
+	 * mixes pollFirst and pollLast with inserts, deletes, batches, set operations, splits and joins,
+	 * checking that every change leaves the kept extremes exact, and drains the tree at the end.
+	 */
+	static boolean poll() {
+		Random r = new Random(17);
+		TreeMap<Integer, String> model = new TreeMap<>();
+		AVLTree t = new AVLTree();
+		for (int op = 0; op < OPERATIONS; op++) {
+			int k = r.nextInt(KEYS);
+			int kind = r.nextInt(100);
+			if (kind < 50) {
+				t.insert(k, "i" + k);
+				model.putIfAbsent(k, "i" + k);
+			}
+			else if (kind < 65) {
+				t.delete(k);
+				model.remove(k);
+			}
+			else if (kind < 80) {
+				Map.Entry<Integer, String> e = model.pollFirstEntry();
+				if (!Objects.equals(t.pollFirst(), (e == null) ? null : e.getValue()))
+					return false;
+			}
+			else if (kind < 90) {
+				Map.Entry<Integer, String> e = model.pollLastEntry();
+				if (!Objects.equals(t.pollLast(), (e == null) ? null : e.getValue()))
+					return false;
+			}
+			else if (kind < 93) {
+				int[] keys = {k - KEYS - 1, k + KEYS}; // new extremes, not -1
+				t.insertAll(keys, new String[] {"i" + keys[0], "i" + keys[1]});
+				for (int key : keys)
+					model.putIfAbsent(key, "i" + key);
+			}
+			else if (kind < 96) {
+				TreeMap<Integer, String> other = randomItems(r, 3, KEYS, "i");
+				other.put(k - 2 * KEYS, "low");
+				if (r.nextBoolean()) {
+					t.union(AVLTree.fromSorted(keys(other), infos(other)));
+					for (Map.Entry<Integer, String> e : other.entrySet())
+						model.putIfAbsent(e.getKey(), e.getValue());
+				}
+				else {
+					t.difference(AVLTree.fromSorted(keys(other), infos(other)));
+					model.keySet().removeAll(other.keySet());
+				}
+			}
+			else if (model.containsKey(k)) { // split, check the parts and join back
+				AVLTree[] parts = t.split(k);
+				if (!same(parts[0], new TreeMap<>(model.headMap(k))) || !same(parts[1], new TreeMap<>(model.tailMap(k, false))))
+					return false;
+				parts[0].join(parts[0].new AVLNode(k, model.get(k)), parts[1]);
+				t = parts[0];
+			}
+			if (!same(t, model))
+				return false;
+		}
+		while (!model.isEmpty())
+			if (!t.pollFirst().equals(model.pollFirstEntry().getValue()))
+				return false;
+		return t.pollFirst() == null && t.pollLast() == null && same(t, model);
+	}
+
+	/**
+	 * static boolean aggregates()
+	 *
+	 * random inserts, deletes, splits and joins with plain nodes, batches and set operations with plain trees
+	 * on trees with the sum, min and max augmentations, comparing aggregate with a fold over the model.
+	 */
+	static boolean aggregates() {
+		Random r = new Random(20);
+		ToLongFunction<String> payload = Long::parseLong;
+		for (AVLTree.Augmentation a : List.of(AVLTree.Augmentation.sum(payload), AVLTree.Augmentation.min(payload), AVLTree.Augmentation.max(payload))) {
+			TreeMap<Integer, String> model = new TreeMap<>();
+			AVLTree t = new AVLTree();
+			t.setAugmentation(a);
+			for (int op = 0; op < OPERATIONS; op++) {
+				int k = r.nextInt(KEYS);
+				String info = String.valueOf(r.nextInt(2000) - 1000);
+				int kind = r.nextInt(100);
+				if (kind < 40) {
+					t.insert(k, info);
+					model.putIfAbsent(k, info);
+				}
+				else if (kind < 75) {
+					t.delete(k);
+					model.remove(k);
+				}
+				else if (kind < 85 && model.containsKey(k)) { // joined back with a plain node
+					AVLTree[] parts = t.split(k);
+					parts[0].join(parts[0].new AVLNode(k, model.get(k)), parts[1]);
+					t = parts[0];
+				}
+				else if (kind < 92) {
+					int[] keys = {k, (k + 3) % KEYS, (k + 300) % KEYS};
+					t.insertAll(keys, new String[] {info, info, info});
+					for (int key : keys)
+						model.putIfAbsent(key, info);
+				}
+				else { // with a plain tree, which is rebuilt first
+					TreeMap<Integer, String> other = randomItems(r, 10, KEYS, "");
+					AVLTree u = AVLTree.fromSorted(keys(other), infos(other));
+					if (kind < 96) {
+						t.union(u);
+						for (Map.Entry<Integer, String> e : other.entrySet())
+							model.putIfAbsent(e.getKey(), e.getValue());
+					}
+					else {
+						t.difference(u);
+						model.keySet().removeAll(other.keySet());
+					}
+				}
+				int from = r.nextInt(KEYS + 20) - 10;
+				int to = from + r.nextInt(KEYS / 2) - 10;
+				long expected = a.identity();
+				if (from <= to)
+					for (Map.Entry<Integer, String> e : model.subMap(from, true, to, true).entrySet())
+						expected = a.combine(expected, a.value(e.getKey(), e.getValue()));
+				if (!same(t, model) || t.aggregate(from, to) != expected)
+					return false;
+			}
+			t.setAugmentation(null);
+			if (!same(t, model))
+				return false;
+			try {
+				t.aggregate(0, KEYS);
+				return false;
+			}
+			catch (IllegalStateException e) {
+				// the tree has no augmentation anymore
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean weakTree()
+	 *
+	 * random inserts, deletes, split-joins, batches and set operations with weak and AVL trees on a weak AVL tree,
+	 * which must come to have internal 2,2 nodes, and then turns it back into an AVL tree.
+	 */
+	static boolean weakTree() {
+		Random r = new Random(21);
+		TreeMap<Integer, String> model = new TreeMap<>();
+		AVLTree t = new AVLTree();
+		t.setWeak(true);
+		boolean relaxed = false; // whether the tree ever had an internal 2,2 node
+		for (int op = 0; op < OPERATIONS; op++) {
+			int k = r.nextInt(KEYS);
+			int kind = r.nextInt(100);
+			if (kind < 40) {
+				t.insert(k, "i" + k);
+				model.putIfAbsent(k, "i" + k);
+			}
+			else if (kind < 85) {
+				t.delete(k);
+				model.remove(k);
+			}
+			else if (kind < 90 && model.containsKey(k)) {
+				AVLTree[] parts = t.split(k);
+				parts[0].join(parts[0].new AVLNode(k, model.get(k)), parts[1]);
+				t = parts[0];
+			}
+			else if (kind < 93) {
+				int[] keys = {k, (k + 5) % KEYS, (k + 500) % KEYS};
+				t.insertAll(keys, new String[] {"i" + keys[0], "i" + keys[1], "i" + keys[2]});
+				for (int key : keys)
+					model.putIfAbsent(key, "i" + key);
+			}
+			else { // with a weak tree or an AVL tree
+				TreeMap<Integer, String> other = randomItems(r, 10, KEYS, "i");
+				AVLTree u = AVLTree.fromSorted(keys(other), infos(other));
+				u.setWeak(r.nextBoolean());
+				if (kind < 97) {
+					t.union(u);
+					for (Map.Entry<Integer, String> e : other.entrySet())
+						model.putIfAbsent(e.getKey(), e.getValue());
+				}
+				else {
+					t.difference(u);
+					model.keySet().removeAll(other.keySet());
+				}
+			}
+			if (!same(t, model))
+				return false;
+			relaxed |= hasTwoTwoNode(t.getRoot());
+		}
+		AVLTree strict = new AVLTree();
+		strict.insert(KEYS, "x");
+		strict.union(t); // t is rebuilt as an AVL tree first
+		model.put(KEYS, "x");
+		t.setWeak(false);
+		return same(strict, model) && t.empty() && relaxed;
+	}
+
+	/**
+	 * static boolean hasTwoTwoNode(AVLTree.IAVLNode n)
+	 *
+	 * returns whether the subtree of n has an internal node whose rank is 2 more than both children's.
+	 */
+	static boolean hasTwoTwoNode(AVLTree.IAVLNode n) {
+		if (n == null || !n.isRealNode())
+			return false;
+		if (n.getHeight() > 1 && n.getHeight() - n.getLeft().getHeight() == 2 && n.getHeight() - n.getRight().getHeight() == 2)
+			return true;
+		return hasTwoTwoNode(n.getLeft()) || hasTwoTwoNode(n.getRight());
+	}
+
+	/**
+	 * static boolean nodePool()
+	 *
+	 * random inserts, deletes, polls, split-joins, batches and unions on an AVLTree with a small node pool,
+	 * augmented half of the time, checking that a deleted node is reused and that the pool can be shrunk.
+	 */
+	static boolean nodePool() {
+		Random r = new Random(23);
+		for (boolean augmented : new boolean[] {false, true}) {
+			TreeMap<Integer, String> model = new TreeMap<>();
+			AVLTree t = new AVLTree();
+			t.setNodePool(8);
+			if (augmented)
+				t.setAugmentation(AVLTree.Augmentation.sum(info -> info.length()));
+			for (int op = 0; op < OPERATIONS; op++) {
+				int k = r.nextInt(KEYS);
+				int kind = r.nextInt(100);
+				if (kind < 45) {
+					t.insert(k, "i" + k);
+					model.putIfAbsent(k, "i" + k);
+				}
+				else if (kind < 70) {
+					t.delete(k);
+					model.remove(k);
+				}
+				else if (kind < 80) {
+					Map.Entry<Integer, String> e = model.pollFirstEntry();
+					if (!Objects.equals(t.pollFirst(), (e == null) ? null : e.getValue()))
+						return false;
+				}
+				else if (kind < 90 && model.containsKey(k)) { // the parts keep the pool
+					AVLTree[] parts = t.split(k);
+					parts[0].join(parts[0].new AVLNode(k, model.get(k)), parts[1]);
+					t = parts[0];
+				}
+				else if (kind < 95) {
+					int[] keys = {k, (k + 7) % KEYS};
+					t.insertAll(keys, new String[] {"i" + keys[0], "i" + keys[1]});
+					for (int key : keys)
+						model.putIfAbsent(key, "i" + key);
+				}
+				else {
+					TreeMap<Integer, String> other = randomItems(r, 5, KEYS, "i");
+					t.union(AVLTree.fromSorted(keys(other), infos(other)));
+					for (Map.Entry<Integer, String> e : other.entrySet())
+						model.putIfAbsent(e.getKey(), e.getValue());
+				}
+				if (!same(t, model))
+					return false;
+			}
+			t.setNodePool(0);
+			t.setNodePool(8); // an empty pool
+			int k = model.isEmpty() ? 0 : model.firstKey();
+			t.insert(k, "i" + k);
+			model.putIfAbsent(k, "i" + k);
+			AVLTree.IAVLNode deleted = nodeOf(t, k);
+			t.delete(k);
+			t.insert(KEYS + 1, "new");
+			model.remove(k);
+			model.put(KEYS + 1, "new");
+			if (nodeOf(t, KEYS + 1) != deleted || !same(t, model))
+				return false;
+			List<AVLTree.IAVLNode> kept = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				t.insert(KEYS + 2 + i, "d");
+				kept.add(nodeOf(t, KEYS + 2 + i));
+			}
+			for (int i = 0; i < 8; i++)
+				t.delete(KEYS + 2 + i); // fills the pool
+			for (int key : model.keySet())
+				t.insert(key, "dup"); // a duplicate doesn't take a node out of the pool
+			for (int i = 0; i < 8; i++) {
+				t.insert(KEYS + 20 + i, "d");
+				model.put(KEYS + 20 + i, "d");
+				if (!kept.contains(nodeOf(t, KEYS + 20 + i)))
+					return false;
+			}
+			if (!same(t, model))
+				return false;
+			t.setNodePool(0);
+			if (!same(t, model))
+				return false;
+		}
+		try {
+			new AVLTree().setNodePool(-1);
+			return false;
+		}
+		catch (IllegalArgumentException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * static AVLTree.IAVLNode nodeOf(AVLTree t, int k)
+	 *
+	 * returns the node of the key k in t, or null if there is none.
+	 */
+	static AVLTree.IAVLNode nodeOf(AVLTree t, int k) {
+		AVLTree.IAVLNode n = t.getRoot();
+		while (n != null && n.isRealNode() && n.getKey() != k)
+			n = (k < n.getKey()) ? n.getLeft() : n.getRight();
+		return (n == null || !n.isRealNode()) ? null : n;
+	}
+
+	/**
+	 * static boolean splitNodes()
+	 *
+	 * splits a large tree at random keys, and checks that every other item keeps its node
+	 * in the part it goes to, and that the join puts the tree back together.
+	 */
+	static boolean splitNodes() {
+		Random r = new Random(24);
+		TreeMap<Integer, String> model = evenItems(LARGE);
+		AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+		for (int op = 0; op < 50; op++) {
+			int x = 2 * r.nextInt(LARGE);
+			List<Integer> probes = new ArrayList<>(List.of(2 * r.nextInt(LARGE), 0, 2 * (LARGE - 1)));
+			for (AVLTree.IAVLNode n = t.getRoot(); n.getKey() != x; n = (x < n.getKey()) ? n.getLeft() : n.getRight())
+				probes.add(n.getKey()); // the ancestors of x become the join nodes
+			AVLTree.IAVLNode[] before = new AVLTree.IAVLNode[probes.size()];
+			for (int i = 0; i < before.length; i++)
+				before[i] = nodeOf(t, probes.get(i));
+			AVLTree[] parts = t.split(x);
+			parts[0].checkInvariants();
+			parts[1].checkInvariants();
+			if (parts[0].size() != x / 2 || parts[1].size() != LARGE - 1 - x / 2)
+				return false;
+			for (int i = 0; i < before.length; i++)
+				if (probes.get(i) != x && nodeOf(parts[(probes.get(i) < x) ? 0 : 1], probes.get(i)) != before[i])
+					return false;
+			parts[0].join(parts[0].new AVLNode(x, model.get(x)), parts[1]);
+			t = parts[0];
+			if (!same(t, model))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean splitAt()
+	 *
+	 * splits random trees of several sizes, the empty one included, at keys that are in them and at keys that aren't,
+	 * and checks that the item with the key, if any, is the minimum of t2.
+	 */
+	static boolean splitAt() {
+		Random r = new Random(25);
+		for (int n : new int[] {0, 1, 2, 7, KEYS, LARGE}) {
+			for (int op = 0; op < 20; op++) {
+				TreeMap<Integer, String> model = randomItems(r, n, 2 * n + 2, "i");
+				AVLTree t = AVLTree.fromSorted(keys(model), infos(model));
+				int x = r.nextInt(2 * n + 4); // above every key at times
+				AVLTree[] parts = t.splitAt(x);
+				if (!same(parts[0], new TreeMap<>(model.headMap(x, false))) || !same(parts[1], new TreeMap<>(model.tailMap(x, true))))
+					return false;
+				if (model.containsKey(x) && !parts[1].min().equals(model.get(x)))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean arrayTree()
+	 *
+	 * random inserts, deletes, searches, splits and joins on an ArrayAVLTree,
+	 * then the reserved key and a join with a large tree that has its own node pool.
+	 */
+	static boolean arrayTree() {
+		Random r = new Random(1);
+		TreeMap<Integer, String> model = new TreeMap<>();
+		ArrayAVLTree t = new ArrayAVLTree();
+		for (int op = 0; op < OPERATIONS; op++) {
+			int k = r.nextInt(KEYS);
+			int kind = r.nextInt(100);
+			if (kind < 48) {
+				if ((t.insert(k, "i" + k) == -1) != model.containsKey(k))
+					return false;
+				model.put(k, "i" + k);
+			}
+			else if (kind < 96) {
+				if ((t.delete(k) == -1) != (model.remove(k) == null))
+					return false;
+			}
+			else if (!model.isEmpty()) { // split at a key of the tree and join back with it
+				int x = model.ceilingKey(k) != null ? model.ceilingKey(k) : model.lastKey();
+				ArrayAVLTree[] parts = t.split(x);
+				parts[0].checkInvariants();
+				parts[1].checkInvariants();
+				if (!same(parts[0].keysToArray(), parts[0].infoToArray(), model.headMap(x))
+						|| !same(parts[1].keysToArray(), parts[1].infoToArray(), model.tailMap(x, false)))
+					return false;
+				parts[0].join(x, "i" + x, parts[1]);
+				t = parts[0];
+			}
+			t.checkInvariants();
+			int q = r.nextInt(KEYS);
+			if (t.size() != model.size() || !same(t.keysToArray(), t.infoToArray(), model)
+					|| !String.valueOf(model.get(q)).equals(String.valueOf(t.search(q))))
+				return false;
+			if (!model.isEmpty() && !(t.min().equals(model.firstEntry().getValue()) && t.max().equals(model.lastEntry().getValue())))
+				return false;
+		}
+		for (int attempt = 0; attempt < 2; attempt++) {
+			try {
+				if (attempt == 0)
+					t.insert(-1, "reserved");
+				else
+					t.join(-1, "reserved", new ArrayAVLTree());
+				return false;
+			}
+			catch (IllegalArgumentException e) {
+				// -1 is reserved
+			}
+		}
+		ArrayAVLTree u = new ArrayAVLTree(); // another pool, its nodes are copied by the join
+		for (int k = KEYS + 1; k <= KEYS + LARGE; k++) {
+			u.insert(k, "u" + k);
+			model.put(k, "u" + k);
+		}
+		t.join(KEYS, "i" + KEYS, u);
+		model.put(KEYS, "i" + KEYS);
+		t.checkInvariants();
+		u.checkInvariants();
+		return u.size() == 0 && t.size() == model.size() && same(t.keysToArray(), t.infoToArray(), model);
+	}
+
+	/**
+	 * static boolean offHeapTree()
+	 *
+	 * random inserts, deletes, searches, splits and joins on an OffHeapAVLTree,
+	 * then a join with a large tree that has its own arena.
+	 */
+	static boolean offHeapTree() {
+		Random r = new Random(2);
+		TreeMap<Integer, String> model = new TreeMap<>();
+		OffHeapAVLTree t = new OffHeapAVLTree();
+		for (int op = 0; op < OPERATIONS; op++) {
+			int k = r.nextInt(KEYS);
+			int kind = r.nextInt(100);
+			if (kind < 48) {
+				if ((t.insert(k, "i" + k) == -1) != model.containsKey(k))
+					return false;
+				model.put(k, "i" + k);
+			}
+			else if (kind < 96) {
+				if ((t.delete(k) == -1) != (model.remove(k) == null))
+					return false;
+			}
+			else if (!model.isEmpty()) { // split at a key of the tree and join back with it
+				int x = model.ceilingKey(k) != null ? model.ceilingKey(k) : model.lastKey();
+				OffHeapAVLTree[] parts = t.split(x);
+				parts[0].checkInvariants();
+				parts[1].checkInvariants();
+				if (!same(parts[0].keysToArray(), parts[0].infoToArray(), model.headMap(x))
+						|| !same(parts[1].keysToArray(), parts[1].infoToArray(), model.tailMap(x, false)))
+					return false;
+				parts[0].join(x, "i" + x, parts[1]);
+				t = parts[0];
+			}
+			t.checkInvariants();
+			int q = r.nextInt(KEYS);
+			if (t.size() != model.size() || !same(t.keysToArray(), t.infoToArray(), model)
+					|| !String.valueOf(model.get(q)).equals(String.valueOf(t.search(q))))
+				return false;
+		}
+		OffHeapAVLTree u = new OffHeapAVLTree(); // another arena, its records are copied by the join
+		for (int k = KEYS + 1; k <= KEYS + LARGE; k++) {
+			u.insert(k, "u" + k);
+			model.put(k, "u" + k);
+		}
+		t.join(KEYS, "i" + KEYS, u);
+		model.put(KEYS, "i" + KEYS);
+		t.checkInvariants();
+		u.checkInvariants();
+		return u.size() == 0 && t.size() == model.size() && same(t.keysToArray(), t.infoToArray(), model);
+	}
+
+	/**
+	 * static boolean longTree()
+	 *
+	 * random inserts, deletes, searches, splits and joins on a LongAVLTree,
+	 * with keys beyond the ints and -1 among them.
+	 */
+	static boolean longTree() {
+		Random r = new Random(4);
+		TreeMap<Long, String> model = new TreeMap<>();
+		LongAVLTree t = new LongAVLTree();
+		for (int op = 0; op < OPERATIONS; op++) {
+			long k = (r.nextInt(KEYS) - KEYS / 2) * (1L << 33) - 1; // 0 gives -1
+			int kind = r.nextInt(100);
+			if (kind < 48) {
+				if ((t.insert(k, "i" + k) == -1) != model.containsKey(k))
+					return false;
+				model.put(k, "i" + k);
+			}
+			else if (kind < 96) {
+				if ((t.delete(k) == -1) != (model.remove(k) == null))
+					return false;
+			}
+			else if (!model.isEmpty()) { // split at a key of the tree and join back with it
+				long x = model.ceilingKey(k) != null ? model.ceilingKey(k) : model.lastKey();
+				LongAVLTree[] parts = t.split(x);
+				parts[0].checkInvariants();
+				parts[1].checkInvariants();
+				if (!Arrays.equals(parts[0].keysToArray(), model.headMap(x).keySet().stream().mapToLong(Long::longValue).toArray())
+						|| !Arrays.equals(parts[1].keysToArray(), model.tailMap(x, false).keySet().stream().mapToLong(Long::longValue).toArray()))
+					return false;
+				parts[0].join(x, "i" + x, parts[1]);
+				t = parts[0];
+			}
+			t.checkInvariants();
+			if (t.size() != model.size() || !String.valueOf(model.get(k)).equals(String.valueOf(t.search(k)))
+					|| !Arrays.equals(t.keysToArray(), model.keySet().stream().mapToLong(Long::longValue).toArray())
+					|| !Arrays.equals(t.infoToArray(), model.values().toArray(new String[0])))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean genericTree()
+	 *
+	 * random inserts, deletes, searches, splits and joins on a GenericAVLTree of strings in reverse order.
+	 */
+	static boolean genericTree() {
+		Random r = new Random(5);
+		Comparator<String> order = Comparator.reverseOrder();
+		TreeMap<String, Integer> model = new TreeMap<>(order);
+		GenericAVLTree<String, Integer> t = new GenericAVLTree<>(order);
+		for (int op = 0; op < OPERATIONS; op++) {
+			int n = r.nextInt(KEYS);
+			String k = "k" + n;
+			int kind = r.nextInt(100);
+			if (kind < 48) {
+				if ((t.insert(k, n) == -1) != model.containsKey(k))
+					return false;
+				model.put(k, n);
+			}
+			else if (kind < 96) {
+				if ((t.delete(k) == -1) != (model.remove(k) == null))
+					return false;
+			}
+			else if (!model.isEmpty()) { // split at a key of the tree and join back with it
+				String x = model.ceilingKey(k) != null ? model.ceilingKey(k) : model.lastKey();
+				int info = model.get(x);
+				GenericAVLTree<String, Integer>[] parts = t.split(x);
+				parts[0].checkInvariants();
+				parts[1].checkInvariants();
+				if (!parts[0].keysToList().equals(List.copyOf(model.headMap(x).keySet()))
+						|| !parts[1].keysToList().equals(List.copyOf(model.tailMap(x, false).keySet())))
+					return false;
+				parts[0].join(x, info, parts[1]);
+				t = parts[0];
+			}
+			t.checkInvariants();
+			if (t.size() != model.size() || !String.valueOf(model.get(k)).equals(String.valueOf(t.search(k)))
+					|| !t.keysToList().equals(List.copyOf(model.keySet()))
+					|| !t.infoToList().equals(List.copyOf(model.values())))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * static boolean pathTree()
+	 *
+	 * random inserts, deletes, searches, splits and joins on a PathAVLTree.
+	 */
+	static boolean pathTree() {
+		Random r = new Random(3);
+		TreeMap<Integer, String> model = new TreeMap<>();
+		PathAVLTree t = new PathAVLTree();
+		for (int op = 0; op < OPERATIONS; op++) {
+			int k = r.nextInt(KEYS);
+			int kind = r.nextInt(100);
+			if (kind < 48) {
+				if ((t.insert(k, "i" + k) == -1) != model.containsKey(k))
+					return false;
+				model.put(k, "i" + k);
+			}
+			else if (kind < 96) {
+				if ((t.delete(k) == -1) != (model.remove(k) == null))
+					return false;
+			}
+			else if (!model.isEmpty()) { // split at a key of the tree and join back with it, from the other side
+				int x = model.ceilingKey(k) != null ? model.ceilingKey(k) : model.lastKey();
+				PathAVLTree[] parts = t.split(x);
+				parts[0].checkInvariants();
+				parts[1].checkInvariants();
+				if (!same(parts[0].keysToArray(), parts[0].infoToArray(), model.headMap(x))
+						|| !same(parts[1].keysToArray(), parts[1].infoToArray(), model.tailMap(x, false)))
+					return false;
+				parts[1].join(x, "i" + x, parts[0]);
+				t = parts[1];
+			}
+			t.checkInvariants();
+			if (t.size() != model.size() || !same(t.keysToArray(), t.infoToArray(), model)
+					|| !String.valueOf(model.get(k)).equals(String.valueOf(t.search(k))))
+				return false;
+		}
+		return true;
+	}
+}
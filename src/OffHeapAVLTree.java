@@ -0,0 +1,902 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * OffHeapAVLTree
+ *
+ * An implementation of an AVL Tree with distinct integer keys and info,
+ * with the same operations and rebalancing as ArrayAVLTree.
+ * The nodes are fixed width records in pages of direct ByteBuffers,
+ * and the infos are kept as UTF-8 bytes in direct chunks, so the heap
+ * holds only the page tables no matter how many items the tree has.
+ * Index 0 is the virtual leaf, so any int can be used as a key.
+ * Trees created by split share the Arena of the tree they were split from.
+ * Joining a tree with another arena copies its records to this tree's arena.
+ * There is no close: direct buffers can't be freed explicitly, so an arena's memory
+ * is returned by the garbage collector once no tree uses the arena anymore.
+ *
+ */
+
+public class OffHeapAVLTree {
+	static final int NIL = 0; // the index of the virtual leaf
+
+	private final Arena arena;
+	private int root;
+
+
+	/**
+	 * public OffHeapAVLTree()
+	 *
+	 * constructs an empty OffHeapAVLTree with its own arena
+	 */
+	public OffHeapAVLTree() {
+		this(new Arena());
+	}
+
+	private OffHeapAVLTree(Arena arena) {
+		this.arena = arena;
+		this.root = NIL;
+	}
+
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == NIL;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return this.arena.size(this.root); // the virtual leaf's size is 0
+	}
+
+	/**
+	 * public int getRank()
+	 *
+	 * Returns the rank of the tree, -1 if the tree is empty.
+	 */
+	public int getRank() {
+		return this.arena.height(this.root); // the virtual leaf's height is -1
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		if (this.root == NIL)
+			return null;
+		int node = this.root;
+		while (this.arena.left(node) != NIL)  // stops on the virtual leaf's parent
+			node = this.arena.left(node);
+		return this.arena.info(node);
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		if (this.root == NIL)
+			return null;
+		int node = this.root;
+		while (this.arena.right(node) != NIL)  // stops on the virtual leaf's parent
+			node = this.arena.right(node);
+		return this.arena.info(node);
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		int node = treePosition(k);
+		if (node == NIL || this.arena.key(node) != k)
+			return null;
+		return this.arena.info(node);
+	}
+
+	/**
+	 * private int treePosition(int k)
+	 *
+	 * returns the node with the given key if it exists in the tree,
+	 * otherwise returns the parent of the place to insert the key (NIL if the tree is empty).
+	 */
+	private int treePosition(int k) {
+		Arena a = this.arena;
+		int x = this.root;
+		int y = NIL;
+		while (x != NIL) { // until encounters a virtual leaf
+			y = x;
+			int key = a.key(x);
+			if (k == key)
+				return x;
+			else if (k < key)
+				x = a.left(x);
+			else
+				x = a.right(x);
+		}
+		return y;
+	}
+
+	/**
+	 * private int rankDiff(int p, int c)
+	 *
+	 * returns the rank difference between the parent p and its child c.
+	 */
+	private int rankDiff(int p, int c) {
+		return this.arena.height(p) - this.arena.height(c);
+	}
+
+	/**
+	 * private void updateSize(int n)
+	 *
+	 * recomputes the size of a single node from its children.
+	 */
+	private void updateSize(int n) {
+		Arena a = this.arena;
+		a.setSize(n, a.size(a.left(n)) + a.size(a.right(n)) + 1);
+	}
+
+	/**
+	 * private void addToHeight(int n, int delta)
+	 *
+	 * adds delta to the height of n, promotions and demotions.
+	 */
+	private void addToHeight(int n, int delta) {
+		this.arena.setHeight(n, this.arena.height(n) + delta);
+	}
+
+	/**
+	 * private void replaceChild(int p, int oldChild, int newChild)
+	 *
+	 * sets newChild in the place of p's child oldChild, or as the root if p is NIL.
+	 */
+	private void replaceChild(int p, int oldChild, int newChild) {
+		Arena a = this.arena;
+		if (newChild != NIL)
+			a.setParent(newChild, p);
+		if (p == NIL)
+			this.root = newChild;
+		else if (a.left(p) == oldChild)
+			a.setLeft(p, newChild);
+		else
+			a.setRight(p, newChild);
+	}
+
+	/**
+	 * private int rightRotate(int z)
+	 *
+	 * rotates the edge between z and its left child n, and fixes the sizes of both.
+	 * The method returns 1 for rotation
+	 */
+	private int rightRotate(int z) {
+		Arena a = this.arena;
+		int n = a.left(z);
+		int b = a.right(n);
+		replaceChild(a.parent(z), z, n);
+		a.setLeft(z, b);
+		if (b != NIL)
+			a.setParent(b, z);
+		a.setRight(n, z);
+		a.setParent(z, n);
+		a.setSize(n, a.size(z));
+		updateSize(z);
+		return 1;
+	}
+
+	/**
+	 * private int leftRotate(int z)
+	 *
+	 * rotates the edge between z and its right child n, and fixes the sizes of both.
+	 * The method returns 1 for rotation
+	 */
+	private int leftRotate(int z) {
+		Arena a = this.arena;
+		int n = a.right(z);
+		int b = a.left(n);
+		replaceChild(a.parent(z), z, n);
+		a.setRight(z, b);
+		if (b != NIL)
+			a.setParent(b, z);
+		a.setLeft(n, z);
+		a.setParent(z, n);
+		a.setSize(n, a.size(z));
+		updateSize(z);
+		return 1;
+	}
+
+	/**
+	 * private int rebalanceInsert(int p, int delta)
+	 *
+	 * rebalances the tree bottom up, starting at p whose child's rank was raised,
+	 * and adds delta to the sizes on the way to the root, in the same pass.
+	 * The method returns sum of rebalancing operations that were taken, counted as in AVLTree.
+	 */
+	private int rebalanceInsert(int p, int delta) {
+		Arena a = this.arena;
+		int num = 0;
+		boolean balanced = false; // once true, only the sizes are updated
+		while (p != NIL) {
+			a.setSize(p, a.size(p) + delta); // the sizes below p are up to date, so the rotations can use them
+			if (!balanced) {
+				int l = a.left(p);
+				int r = a.right(p);
+				if (rankDiff(p, l) == 0) { // left child focus
+					if (rankDiff(p, r) == 1) { // 0,1 needs promotion
+						addToHeight(p, 1);
+						num++;
+					}
+					else if (rankDiff(l, a.left(l)) == 1 && rankDiff(l, a.right(l)) == 2) { // 1,2 right rotation
+						addToHeight(p, -1);
+						num += 1 + rightRotate(p);
+						p = l;
+						balanced = true;
+					}
+					else if (rankDiff(l, a.left(l)) == 2) { // 2,1 leftRight rotation
+						int c = a.right(l);
+						addToHeight(l, -1);
+						addToHeight(p, -1);
+						addToHeight(c, 1);
+						num += 3 + leftRotate(l) + rightRotate(p);
+						p = c;
+						balanced = true;
+					}
+					else { // 1,1 can't follow an insertion, only a join, the rotated subtree grows
+						addToHeight(l, 1);
+						num += 1 + rightRotate(p);
+						p = l;
+					}
+				}
+				else if (rankDiff(p, r) == 0) { // right child focus
+					if (rankDiff(p, l) == 1) { // 1,0 needs promotion
+						addToHeight(p, 1);
+						num++;
+					}
+					else if (rankDiff(r, a.left(r)) == 2 && rankDiff(r, a.right(r)) == 1) { // 2,1 left rotation
+						addToHeight(p, -1);
+						num += 1 + leftRotate(p);
+						p = r;
+						balanced = true;
+					}
+					else if (rankDiff(r, a.right(r)) == 2) { // 1,2 rightLeft rotation
+						int c = a.left(r);
+						addToHeight(r, -1);
+						addToHeight(p, -1);
+						addToHeight(c, 1);
+						num += 3 + rightRotate(r) + leftRotate(p);
+						p = c;
+						balanced = true;
+					}
+					else { // 1,1 can't follow an insertion, only a join, the rotated subtree grows
+						addToHeight(r, 1);
+						num += 1 + leftRotate(p);
+						p = r;
+					}
+				}
+				else
+					balanced = true; // no more rebalancing is needed
+			}
+			p = a.parent(p);
+		}
+		return num;
+	}
+
+	/**
+	 * private int rebalanceDelete(int p)
+	 *
+	 * rebalances the tree bottom up, starting at p whose child's rank was lowered,
+	 * and subtracts one from the sizes on the way to the root, in the same pass.
+	 * The method returns sum of rebalancing operations that were taken, counted as in AVLTree.
+	 */
+	private int rebalanceDelete(int p) {
+		Arena a = this.arena;
+		int num = 0;
+		boolean balanced = false; // once true, only the sizes are updated
+		while (p != NIL) {
+			a.setSize(p, a.size(p) - 1); // the sizes below p are up to date, so the rotations can use them
+			if (!balanced) {
+				int l = a.left(p);
+				int r = a.right(p);
+				if (rankDiff(p, l) == 2 && rankDiff(p, r) == 2) { // 2,2 needs demotion
+					addToHeight(p, -1);
+					num++;
+				}
+				else if (rankDiff(p, l) == 3) { // 3,1
+					if (rankDiff(r, a.left(r)) == 1 && rankDiff(r, a.right(r)) == 1) { // 1,1
+						addToHeight(p, -1);
+						addToHeight(r, 1);
+						num += 2 + leftRotate(p);
+						balanced = true;
+					}
+					else if (rankDiff(r, a.left(r)) == 2) { // 2,1
+						addToHeight(p, -2);
+						num += 2 + leftRotate(p);
+					}
+					else { // 1,2
+						int c = a.left(r);
+						addToHeight(p, -2);
+						addToHeight(r, -1);
+						addToHeight(c, 1);
+						num += 4 + rightRotate(r) + leftRotate(p);
+						r = c;
+					}
+					p = r; // the root of the rotated subtree
+				}
+				else if (rankDiff(p, r) == 3) { // 1,3
+					if (rankDiff(l, a.left(l)) == 1 && rankDiff(l, a.right(l)) == 1) { // 1,1
+						addToHeight(p, -1);
+						addToHeight(l, 1);
+						num += 2 + rightRotate(p);
+						balanced = true;
+					}
+					else if (rankDiff(l, a.right(l)) == 2) { // 1,2
+						addToHeight(p, -2);
+						num += 2 + rightRotate(p);
+					}
+					else { // 2,1
+						int c = a.right(l);
+						addToHeight(p, -2);
+						addToHeight(l, -1);
+						addToHeight(c, 1);
+						num += 4 + leftRotate(l) + rightRotate(p);
+						l = c;
+					}
+					p = l; // the root of the rotated subtree
+				}
+				else
+					balanced = true; // no more rebalancing is needed
+			}
+			p = a.parent(p);
+		}
+		return num;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		Arena a = this.arena;
+		int y = treePosition(k);
+		if (y != NIL && a.key(y) == k) // the key already exists in tree
+			return -1;
+		int n = a.allocate(k, i);
+		a.setParent(n, y);
+		if (y == NIL) { // the tree is empty
+			this.root = n;
+			return 0;
+		}
+		if (k < a.key(y))
+			a.setLeft(y, n);
+		else
+			a.setRight(y, n);
+		return rebalanceInsert(y, 1); // rebalancing the tree and updating the sizes
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		Arena a = this.arena;
+		int n = treePosition(k);
+		if (n == NIL || a.key(n) != k) // not in tree
+			return -1;
+		if (a.left(n) != NIL && a.right(n) != NIL) { // two children, the successor's item moves into n
+			int m = a.right(n);
+			while (a.left(m) != NIL)
+				m = a.left(m);
+			a.swapItems(n, m);
+			n = m;
+		}
+		int child = (a.left(n) != NIL) ? a.left(n) : a.right(n);
+		int y = a.parent(n);
+		replaceChild(y, n, child);
+		a.release(n);
+		return rebalanceDelete(y); // rebalancing the tree and updating the sizes
+	}
+
+	/**
+	 * private int successor(int n)
+	 *
+	 * returns the successor of n, or NIL if n holds the largest key.
+	 */
+	private int successor(int n) {
+		Arena a = this.arena;
+		if (a.right(n) != NIL) {
+			n = a.right(n);
+			while (a.left(n) != NIL)
+				n = a.left(n);
+			return n;
+		}
+		int parent = a.parent(n);
+		while (parent != NIL && a.right(parent) == n) { // n is a right child
+			n = parent;
+			parent = a.parent(n);
+		}
+		return parent;
+	}
+
+	/**
+	 * private int first()
+	 *
+	 * returns the node with the smallest key, or NIL if the tree is empty.
+	 */
+	private int first() {
+		int n = this.root;
+		if (n != NIL)
+			while (this.arena.left(n) != NIL)
+				n = this.arena.left(n);
+		return n;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[this.size()];
+		int index = 0;
+		for (int n = first(); n != NIL; n = successor(n))
+			arr[index++] = this.arena.key(n);
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[this.size()];
+		int index = 0;
+		for (int n = first(); n != NIL; n = successor(n))
+			arr[index++] = this.arena.info(n);
+		return arr;
+	}
+
+	/**
+	 * private OffHeapAVLTree subtree(int n)
+	 *
+	 * detaches the subtree rooted at n and returns it as a tree over the same arena.
+	 */
+	private OffHeapAVLTree subtree(int n) {
+		OffHeapAVLTree t = new OffHeapAVLTree(this.arena);
+		if (n != NIL)
+			this.arena.setParent(n, NIL);
+		t.root = n;
+		return t;
+	}
+
+	/**
+	 * public OffHeapAVLTree[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two trees over this tree's arena. keys(t1) < x < keys(t2).
+	 * The nodes on the path to x are reused as the join nodes, and x's node is released.
+	 * This tree is left empty.
+	 * precondition: search(x) != null
+	 */
+	public OffHeapAVLTree[] split(int x) {
+		Arena a = this.arena;
+		int n = treePosition(x);
+		OffHeapAVLTree t1 = subtree(a.left(n)); // tree with smaller keys
+		OffHeapAVLTree t2 = subtree(a.right(n)); // tree with bigger keys
+		int cur = n;
+		int parent = a.parent(n);
+		while (parent != NIL) {
+			int next = a.parent(parent);
+			if (a.right(parent) == cur) // cur is a right child
+				t1.joinNode(parent, subtree(a.left(parent)));
+			else
+				t2.joinNode(parent, subtree(a.right(parent)));
+			cur = parent;
+			parent = next;
+		}
+		a.release(n);
+		this.root = NIL;
+		OffHeapAVLTree[] result = {t1, t2};
+		return result;
+	}
+
+	/**
+	 * public int join(int k, String i, OffHeapAVLTree t)
+	 *
+	 * joins t and a new item with key k and info i with the tree, t is left empty.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * If t doesn't share this tree's arena (it wasn't split from the same tree), its records are
+	 * copied to this tree's arena first, which takes O(t.size()) more.
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys()
+	 */
+	public int join(int k, String i, OffHeapAVLTree t) {
+		int res = Math.abs(this.getRank() - t.getRank()) + 1;
+		if (t.arena != this.arena) {
+			OffHeapAVLTree copy = subtree(adopt(t.arena, t.root));
+			t.root = NIL;
+			t = copy;
+		}
+		joinNode(this.arena.allocate(k, i), t);
+		return res;
+	}
+
+	/**
+	 * private int adopt(Arena from, int n)
+	 *
+	 * copies the subtree of n from another arena to this tree's arena, with the same shape,
+	 * and releases its records in the other arena. Returns the copy of n, NIL for the virtual leaf.
+	 */
+	private int adopt(Arena from, int n) {
+		if (n == NIL)
+			return NIL;
+		int l = adopt(from, from.left(n));
+		int r = adopt(from, from.right(n));
+		int copy = this.arena.copy(from, n);
+		link(copy, l, r);
+		from.release(n);
+		return copy;
+	}
+
+	/**
+	 * private void joinNode(int x, OffHeapAVLTree t)
+	 *
+	 * joins t and the detached node x with the tree, t is left empty.
+	 */
+	private void joinNode(int x, OffHeapAVLTree t) {
+		Arena a = this.arena;
+		int thisRoot = this.root;
+		int otherRoot = t.root;
+		t.root = NIL;
+		int leftRoot = otherRoot;
+		int rightRoot = thisRoot;
+		if (otherRoot == NIL ? a.key(x) > a.key(thisRoot) : a.key(otherRoot) > a.key(x)) {
+			leftRoot = thisRoot;
+			rightRoot = otherRoot;
+		}
+		int leftRank = a.height(leftRoot);
+		int rightRank = a.height(rightRoot);
+		if (Math.abs(leftRank - rightRank) <= 1) { // x becomes the root
+			link(x, leftRoot, rightRoot);
+			a.setParent(x, NIL);
+			this.root = x;
+			return;
+		}
+		int c;
+		if (leftRank < rightRank) { // walk down the left spine of the right tree
+			c = rightRoot;
+			while (a.height(a.left(c)) > leftRank + 1)
+				c = a.left(c);
+			link(x, leftRoot, a.left(c));
+			a.setLeft(c, x);
+			this.root = rightRoot;
+		}
+		else { // walk down the right spine of the left tree
+			c = leftRoot;
+			while (a.height(a.right(c)) > rightRank + 1)
+				c = a.right(c);
+			link(x, a.right(c), rightRoot);
+			a.setRight(c, x);
+			this.root = leftRoot;
+		}
+		a.setParent(x, c);
+		rebalanceInsert(c, a.size((leftRank < rightRank) ? leftRoot : rightRoot) + 1); // the shorter tree and x were added below c
+	}
+
+	/**
+	 * private void link(int x, int l, int r)
+	 *
+	 * sets l and r as the children of x, and fixes x's height and size.
+	 */
+	private void link(int x, int l, int r) {
+		Arena a = this.arena;
+		a.setLeft(x, l);
+		a.setRight(x, r);
+		if (l != NIL)
+			a.setParent(l, x);
+		if (r != NIL)
+			a.setParent(r, x);
+		a.setHeight(x, Math.max(a.height(l), a.height(r)) + 1);
+		a.setSize(x, a.size(l) + a.size(r) + 1);
+	}
+
+
+	/**
+	 * void checkInvariants()
+	 *
+	 * walks the whole tree and throws an IllegalStateException if it is broken: a key out of order,
+	 * a wrong parent, size or height, a rank rule that doesn't hold or a changed virtual leaf.
+	 * Runs in O(n), for InvariantTester.
+	 */
+	void checkInvariants() {
+		if (this.arena.height(NIL) != -1 || this.arena.size(NIL) != 0)
+			throw new IllegalStateException("the virtual leaf was changed");
+		if (this.root != NIL && this.arena.parent(this.root) != NIL)
+			throw new IllegalStateException("the root has a parent");
+		checkSubtree(this.root, NIL, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * private void checkSubtree(int n, int parent, long lo, long hi)
+	 *
+	 * checks the subtree of n for checkInvariants, its keys must be between lo and hi.
+	 */
+	private void checkSubtree(int n, int parent, long lo, long hi) {
+		if (n == NIL)
+			return;
+		Arena a = this.arena;
+		int k = a.key(n);
+		if (a.parent(n) != parent)
+			throw new IllegalStateException("wrong parent of " + k);
+		if (k <= lo || k >= hi)
+			throw new IllegalStateException("key " + k + " is out of order");
+		int l = a.left(n);
+		int r = a.right(n);
+		checkSubtree(l, n, lo, k);
+		checkSubtree(r, n, k, hi);
+		if (a.size(n) != a.size(l) + a.size(r) + 1)
+			throw new IllegalStateException("wrong size of " + k);
+		int leftDiff = rankDiff(n, l);
+		int rightDiff = rankDiff(n, r);
+		if (Math.min(leftDiff, rightDiff) != 1 || Math.max(leftDiff, rightDiff) > 2) // 1,1, 1,2 or 2,1
+			throw new IllegalStateException("the rank rule doesn't hold at " + k);
+	}
+
+
+	/**
+	 * static class Arena
+	 *
+	 * Owns the off-heap memory of the trees: pages of fixed width node records,
+	 * record 0 is the virtual leaf, and chunks of UTF-8 info bytes.
+	 * Released records are chained through their left field and reused before new pages are added.
+	 * The info bytes of released records are reclaimed by compacting the chunks once
+	 * they are mostly garbage.
+	 * Direct buffers can't be freed explicitly, the memory is returned once the arena
+	 * and its buffers are collected.
+	 */
+	static class Arena {
+		private static final int PAGE_SHIFT = 16; // 64K records per page
+		private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+		private static final int CHUNK_BYTES = 1 << 20;
+
+		// the fields' offsets inside a record
+		private static final int KEY = 0;
+		private static final int LEFT = 4;
+		private static final int RIGHT = 8;
+		private static final int PARENT = 12;
+		private static final int SIZE = 16;
+		private static final int HEIGHT = 20;
+		private static final int INFO_ADDRESS = 24; // chunk index in the high int, offset in the low int
+		private static final int INFO_LENGTH = 32; // -1 for null info
+		private static final int RECORD_BYTES = 40;
+
+		private static final int RELEASED = -2; // the height of a released record
+
+		private ByteBuffer[] pages = new ByteBuffer[1];
+		private int next = 1; // the first record that was never used
+		private int free = NIL; // the head of the free list
+
+		private ByteBuffer[] chunks = new ByteBuffer[1];
+		private int chunkCount = 0;
+		private long infoBytes = 0; // the bytes written to the chunks
+		private long garbageBytes = 0; // the bytes of released infos
+
+		Arena() {
+			this.pages[0] = newPage();
+			setHeight(NIL, -1);
+			setSize(NIL, 0);
+		}
+
+		private static ByteBuffer newPage() {
+			return ByteBuffer.allocateDirect(RECORD_BYTES << PAGE_SHIFT);
+		}
+
+		private ByteBuffer page(int n) {
+			return this.pages[n >>> PAGE_SHIFT];
+		}
+
+		private static int offset(int n, int field) {
+			return (n & PAGE_MASK) * RECORD_BYTES + field;
+		}
+
+		int key(int n) { return page(n).getInt(offset(n, KEY)); }
+		int left(int n) { return page(n).getInt(offset(n, LEFT)); }
+		int right(int n) { return page(n).getInt(offset(n, RIGHT)); }
+		int parent(int n) { return page(n).getInt(offset(n, PARENT)); }
+		int size(int n) { return page(n).getInt(offset(n, SIZE)); }
+		int height(int n) { return page(n).getInt(offset(n, HEIGHT)); }
+
+		void setKey(int n, int v) { page(n).putInt(offset(n, KEY), v); }
+		void setLeft(int n, int v) { page(n).putInt(offset(n, LEFT), v); }
+		void setRight(int n, int v) { page(n).putInt(offset(n, RIGHT), v); }
+		void setParent(int n, int v) { page(n).putInt(offset(n, PARENT), v); }
+		void setSize(int n, int v) { page(n).putInt(offset(n, SIZE), v); }
+		void setHeight(int n, int v) { page(n).putInt(offset(n, HEIGHT), v); }
+
+		/**
+		 * int allocate(int k, String i)
+		 *
+		 * returns the index of a new leaf record with key k and info i, without a parent.
+		 */
+		int allocate(int k, String i) {
+			int n = this.free;
+			if (n != NIL)
+				this.free = left(n);
+			else {
+				if (this.next == Integer.MAX_VALUE)
+					throw new IllegalStateException("the arena is full");
+				n = this.next++;
+				int page = n >>> PAGE_SHIFT;
+				if (page == this.pages.length)
+					this.pages = Arrays.copyOf(this.pages, page * 2);
+				if (this.pages[page] == null)
+					this.pages[page] = newPage();
+			}
+			setKey(n, k);
+			setLeft(n, NIL);
+			setRight(n, NIL);
+			setParent(n, NIL);
+			setSize(n, 1);
+			setHeight(n, 0);
+			writeInfo(n, i);
+			return n;
+		}
+
+		/**
+		 * void release(int n)
+		 *
+		 * puts n in the free list, its info bytes become garbage.
+		 */
+		void release(int n) {
+			int length = page(n).getInt(offset(n, INFO_LENGTH));
+			if (length > 0)
+				this.garbageBytes += length;
+			setHeight(n, RELEASED);
+			setLeft(n, this.free);
+			this.free = n;
+			if (this.garbageBytes > CHUNK_BYTES && this.garbageBytes * 2 > this.infoBytes)
+				compact();
+		}
+
+		/**
+		 * void swapItems(int n, int m)
+		 *
+		 * swaps the keys and infos of n and m.
+		 */
+		void swapItems(int n, int m) {
+			ByteBuffer pn = page(n);
+			ByteBuffer pm = page(m);
+			int key = key(n);
+			long address = pn.getLong(offset(n, INFO_ADDRESS));
+			int length = pn.getInt(offset(n, INFO_LENGTH));
+			setKey(n, key(m));
+			pn.putLong(offset(n, INFO_ADDRESS), pm.getLong(offset(m, INFO_ADDRESS)));
+			pn.putInt(offset(n, INFO_LENGTH), pm.getInt(offset(m, INFO_LENGTH)));
+			setKey(m, key);
+			pm.putLong(offset(m, INFO_ADDRESS), address);
+			pm.putInt(offset(m, INFO_LENGTH), length);
+		}
+
+		/**
+		 * int copy(Arena from, int n)
+		 *
+		 * returns the index of a new leaf record with the key and the info bytes of the record n of another arena.
+		 */
+		int copy(Arena from, int n) {
+			int m = allocate(from.key(n), null);
+			byte[] bytes = from.infoBytes(n);
+			if (bytes != null) { // the bytes are copied as they are, without decoding
+				ByteBuffer page = page(m);
+				page.putLong(offset(m, INFO_ADDRESS), append(bytes));
+				page.putInt(offset(m, INFO_LENGTH), bytes.length);
+			}
+			return m;
+		}
+
+		/**
+		 * String info(int n)
+		 *
+		 * decodes the info of n.
+		 */
+		String info(int n) {
+			byte[] bytes = infoBytes(n);
+			if (bytes == null)
+				return null;
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * private byte[] infoBytes(int n)
+		 *
+		 * returns a copy of the UTF-8 bytes of n's info, null for null info.
+		 */
+		private byte[] infoBytes(int n) {
+			ByteBuffer page = page(n);
+			int length = page.getInt(offset(n, INFO_LENGTH));
+			if (length < 0)
+				return null;
+			long address = page.getLong(offset(n, INFO_ADDRESS));
+			byte[] bytes = new byte[length];
+			this.chunks[(int)(address >>> 32)].get((int)address, bytes);
+			return bytes;
+		}
+
+		private void writeInfo(int n, String i) {
+			ByteBuffer page = page(n);
+			if (i == null) {
+				page.putInt(offset(n, INFO_LENGTH), -1);
+				return;
+			}
+			byte[] bytes = i.getBytes(StandardCharsets.UTF_8);
+			page.putLong(offset(n, INFO_ADDRESS), append(bytes));
+			page.putInt(offset(n, INFO_LENGTH), bytes.length);
+		}
+
+		/**
+		 * private long append(byte[] bytes)
+		 *
+		 * copies the bytes to the last chunk, or to a new chunk if they don't fit,
+		 * and returns their address.
+		 */
+		private long append(byte[] bytes) {
+			ByteBuffer chunk = (this.chunkCount == 0) ? null : this.chunks[this.chunkCount - 1];
+			if (chunk == null || chunk.remaining() < bytes.length) {
+				chunk = ByteBuffer.allocateDirect(Math.max(CHUNK_BYTES, bytes.length));
+				if (this.chunkCount == this.chunks.length)
+					this.chunks = Arrays.copyOf(this.chunks, this.chunkCount * 2);
+				this.chunks[this.chunkCount++] = chunk;
+			}
+			long address = ((long)(this.chunkCount - 1) << 32) | chunk.position();
+			chunk.put(bytes);
+			this.infoBytes += bytes.length;
+			return address;
+		}
+
+		/**
+		 * private void compact()
+		 *
+		 * copies the infos of all the live records to new chunks, dropping the garbage.
+		 */
+		private void compact() {
+			ByteBuffer[] old = this.chunks;
+			this.chunks = new ByteBuffer[1];
+			this.chunkCount = 0;
+			this.infoBytes = 0;
+			this.garbageBytes = 0;
+			for (int n = 1; n < this.next; n++) {
+				ByteBuffer page = page(n);
+				int length = page.getInt(offset(n, INFO_LENGTH));
+				if (height(n) == RELEASED || length < 0)
+					continue;
+				long address = page.getLong(offset(n, INFO_ADDRESS));
+				byte[] bytes = new byte[length];
+				old[(int)(address >>> 32)].get((int)address, bytes);
+				page.putLong(offset(n, INFO_ADDRESS), append(bytes));
+			}
+		}
+	}
+}
@@ -0,0 +1,588 @@
+/**
+ *
+ * PathAVLTree
+ *
+ * An implementation of an AVL Tree with distinct integer keys and info,
+ * with the same operations as AVLTree, whose nodes don't keep a parent reference.
+ * Every operation records the nodes it passes on the way down in a path array
+ * that is reused by all operations of the tree, and rebalances along it on the way back up.
+ * The virtual leaf is a single shared node that is recognized by identity.
+ *
+ */
+
+public class PathAVLTree {
+	// an AVL tree of height h has at least Fib(h+3)-1 nodes, so int sizes keep the height below 46
+	private static final int MAX_DEPTH = 48;
+
+	// the virtual leaf of all the trees, its fields are never changed
+	private static final Node VIRTUAL_LEAF = new Node(0, null, -1, 0);
+
+	private Node root;
+	private final Node[] path = new Node[MAX_DEPTH]; // path[0] is the root
+
+
+	/**
+	 * public PathAVLTree()
+	 *
+	 * constructs an empty PathAVLTree
+	 */
+	public PathAVLTree() {
+		this.root = VIRTUAL_LEAF;
+	}
+
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == VIRTUAL_LEAF;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return this.root.size; // the virtual leaf's size is 0
+	}
+
+	/**
+	 * public int getRank()
+	 *
+	 * Returns the rank of the tree, -1 if the tree is empty.
+	 */
+	public int getRank() {
+		return this.root.height; // the virtual leaf's height is -1
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		if (this.root == VIRTUAL_LEAF)
+			return null;
+		Node node = this.root;
+		while (node.left != VIRTUAL_LEAF)  // stops on the virtual leaf's parent
+			node = node.left;
+		return node.info;
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		if (this.root == VIRTUAL_LEAF)
+			return null;
+		Node node = this.root;
+		while (node.right != VIRTUAL_LEAF)  // stops on the virtual leaf's parent
+			node = node.right;
+		return node.info;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		Node node = this.root;
+		while (node != VIRTUAL_LEAF) {
+			if (k == node.key)
+				return node.info;
+			node = (k < node.key) ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * private int treePath(int k)
+	 *
+	 * records in path the nodes from the root to the node with the given key,
+	 * or to the parent of the place to insert the key if it isn't in the tree.
+	 * returns the number of recorded nodes.
+	 */
+	private int treePath(int k) {
+		Node x = this.root;
+		int depth = 0;
+		while (x != VIRTUAL_LEAF) { // until encounters a virtual leaf
+			this.path[depth++] = x;
+			if (k == x.key)
+				break;
+			x = (k < x.key) ? x.left : x.right;
+		}
+		return depth;
+	}
+
+	/**
+	 * private Node parentAt(int i)
+	 *
+	 * returns the parent of path[i], null for the root.
+	 */
+	private Node parentAt(int i) {
+		return (i == 0) ? null : this.path[i - 1];
+	}
+
+	/**
+	 * private static int rankDiff(Node p, Node c)
+	 *
+	 * returns the rank difference between the parent p and its child c.
+	 */
+	private static int rankDiff(Node p, Node c) {
+		return p.height - c.height;
+	}
+
+	/**
+	 * private static void updateSize(Node n)
+	 *
+	 * recomputes the size of a single node from its children.
+	 */
+	private static void updateSize(Node n) {
+		n.size = n.left.size + n.right.size + 1;
+	}
+
+	/**
+	 * private void replaceChild(Node p, Node oldChild, Node newChild)
+	 *
+	 * sets newChild in the place of p's child oldChild, or as the root if p is null.
+	 */
+	private void replaceChild(Node p, Node oldChild, Node newChild) {
+		if (p == null)
+			this.root = newChild;
+		else if (p.left == oldChild)
+			p.left = newChild;
+		else
+			p.right = newChild;
+	}
+
+	/**
+	 * private int rightRotate(Node p, Node z)
+	 *
+	 * rotates the edge between z and its left child, p is z's parent (null for the root).
+	 * fixes the sizes of both rotated nodes. The method returns 1 for rotation
+	 */
+	private int rightRotate(Node p, Node z) {
+		Node n = z.left;
+		z.left = n.right;
+		n.right = z;
+		replaceChild(p, z, n);
+		n.size = z.size;
+		updateSize(z);
+		return 1;
+	}
+
+	/**
+	 * private int leftRotate(Node p, Node z)
+	 *
+	 * rotates the edge between z and its right child, p is z's parent (null for the root).
+	 * fixes the sizes of both rotated nodes. The method returns 1 for rotation
+	 */
+	private int leftRotate(Node p, Node z) {
+		Node n = z.right;
+		z.right = n.left;
+		n.left = z;
+		replaceChild(p, z, n);
+		n.size = z.size;
+		updateSize(z);
+		return 1;
+	}
+
+	/**
+	 * private int rebalanceInsert(int i)
+	 *
+	 * rebalances the tree along the path bottom up, starting at path[i] whose child's rank was raised.
+	 * The method returns sum of rebalancing operations that were taken, counted as in AVLTree.
+	 */
+	private int rebalanceInsert(int i) {
+		int num = 0;
+		for (; i >= 0; i--) {
+			Node p = this.path[i];
+			Node l = p.left;
+			Node r = p.right;
+			if (rankDiff(p, l) == 0) { // left child focus
+				if (rankDiff(p, r) == 1) { // 0,1 needs promotion
+					p.height++;
+					num++;
+					continue;
+				}
+				if (rankDiff(l, l.left) == 1 && rankDiff(l, l.right) == 2) { // 1,2 right rotation
+					p.height--;
+					return num + 1 + rightRotate(parentAt(i), p);
+				}
+				if (rankDiff(l, l.left) == 2) { // 2,1 leftRight rotation
+					Node c = l.right;
+					l.height--;
+					p.height--;
+					c.height++;
+					return num + 3 + leftRotate(p, l) + rightRotate(parentAt(i), p);
+				}
+				// 1,1 can't follow an insertion, only a join, the rotated subtree grows
+				l.height++;
+				num += 1 + rightRotate(parentAt(i), p);
+			}
+			else if (rankDiff(p, r) == 0) { // right child focus
+				if (rankDiff(p, l) == 1) { // 1,0 needs promotion
+					p.height++;
+					num++;
+					continue;
+				}
+				if (rankDiff(r, r.left) == 2 && rankDiff(r, r.right) == 1) { // 2,1 left rotation
+					p.height--;
+					return num + 1 + leftRotate(parentAt(i), p);
+				}
+				if (rankDiff(r, r.right) == 2) { // 1,2 rightLeft rotation
+					Node c = r.left;
+					r.height--;
+					p.height--;
+					c.height++;
+					return num + 3 + rightRotate(p, r) + leftRotate(parentAt(i), p);
+				}
+				// 1,1 can't follow an insertion, only a join, the rotated subtree grows
+				r.height++;
+				num += 1 + leftRotate(parentAt(i), p);
+			}
+			else
+				return num; // no more rebalancing is needed
+		}
+		return num;
+	}
+
+	/**
+	 * private int rebalanceDelete(int i)
+	 *
+	 * rebalances the tree along the path bottom up, starting at path[i] whose child's rank was lowered.
+	 * The method returns sum of rebalancing operations that were taken, counted as in AVLTree.
+	 */
+	private int rebalanceDelete(int i) {
+		int num = 0;
+		for (; i >= 0; i--) {
+			Node p = this.path[i];
+			Node l = p.left;
+			Node r = p.right;
+			if (rankDiff(p, l) == 2 && rankDiff(p, r) == 2) { // 2,2 needs demotion
+				p.height--;
+				num++;
+			}
+			else if (rankDiff(p, l) == 3) { // 3,1
+				if (rankDiff(r, r.left) == 1 && rankDiff(r, r.right) == 1) { // 1,1
+					p.height--;
+					r.height++;
+					return num + 2 + leftRotate(parentAt(i), p);
+				}
+				if (rankDiff(r, r.left) == 2) { // 2,1
+					p.height -= 2;
+					num += 2 + leftRotate(parentAt(i), p);
+				}
+				else { // 1,2
+					Node c = r.left;
+					p.height -= 2;
+					r.height--;
+					c.height++;
+					num += 4 + rightRotate(p, r) + leftRotate(parentAt(i), p);
+				}
+			}
+			else if (rankDiff(p, r) == 3) { // 1,3
+				if (rankDiff(l, l.left) == 1 && rankDiff(l, l.right) == 1) { // 1,1
+					p.height--;
+					l.height++;
+					return num + 2 + rightRotate(parentAt(i), p);
+				}
+				if (rankDiff(l, l.right) == 2) { // 1,2
+					p.height -= 2;
+					num += 2 + rightRotate(parentAt(i), p);
+				}
+				else { // 2,1
+					Node c = l.right;
+					p.height -= 2;
+					l.height--;
+					c.height++;
+					num += 4 + leftRotate(p, l) + rightRotate(parentAt(i), p);
+				}
+			}
+			else
+				return num; // no more rebalancing is needed
+		}
+		return num;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		int depth = treePath(k);
+		if (depth == 0) { // the tree is empty
+			this.root = new Node(k, i, 0, 1);
+			return 0;
+		}
+		Node y = this.path[depth - 1];
+		if (y.key == k) // the key already exists in tree
+			return -1;
+		Node n = new Node(k, i, 0, 1);
+		if (k < y.key)
+			y.left = n;
+		else
+			y.right = n;
+		for (int j = 0; j < depth; j++)
+			this.path[j].size++;
+		return rebalanceInsert(depth - 1);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		int depth = treePath(k);
+		if (depth == 0 || this.path[depth - 1].key != k) // not in tree
+			return -1;
+		Node n = this.path[depth - 1];
+		if (n.left != VIRTUAL_LEAF && n.right != VIRTUAL_LEAF) { // two children, the successor's item moves into n
+			Node m = n.right;
+			this.path[depth++] = m;
+			while (m.left != VIRTUAL_LEAF) {
+				m = m.left;
+				this.path[depth++] = m;
+			}
+			n.key = m.key;
+			n.info = m.info;
+			n = m;
+		}
+		Node child = (n.left != VIRTUAL_LEAF) ? n.left : n.right;
+		depth--; // n leaves the path
+		replaceChild(parentAt(depth), n, child);
+		for (int j = 0; j < depth; j++)
+			this.path[j].size--;
+		return rebalanceDelete(depth - 1);
+	}
+
+	/**
+	 * private void inorder(int[] keys, String[] infos)
+	 *
+	 * writes the keys of the tree to keys, or if keys is null, the infos to infos,
+	 * in sorted order, using the path as the stack.
+	 */
+	private void inorder(int[] keys, String[] infos) {
+		int index = 0;
+		int depth = 0;
+		Node cur = this.root;
+		while (cur != VIRTUAL_LEAF || depth > 0) {
+			if (cur != VIRTUAL_LEAF) {
+				this.path[depth++] = cur;
+				cur = cur.left;
+			}
+			else { // got to a virtual leaf
+				Node n = this.path[--depth];
+				if (keys != null)
+					keys[index] = n.key;
+				else
+					infos[index] = n.info;
+				index++;
+				cur = n.right;
+			}
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[this.size()];
+		inorder(arr, null);
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[this.size()];
+		inorder(null, arr);
+		return arr;
+	}
+
+	/**
+	 * public PathAVLTree[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+	 * The nodes on the path to x are reused as the join nodes. This tree is left empty.
+	 * precondition: search(x) != null
+	 */
+	public PathAVLTree[] split(int x) {
+		int depth = treePath(x);
+		Node n = this.path[depth - 1];
+		PathAVLTree t1 = new PathAVLTree(); // tree with smaller keys
+		PathAVLTree t2 = new PathAVLTree(); // tree with bigger keys
+		t1.root = n.left;
+		t2.root = n.right;
+		for (int i = depth - 2; i >= 0; i--) {
+			Node parent = this.path[i];
+			if (parent.right == this.path[i + 1]) // the path goes to the right
+				t1.joinNode(parent, parent.left);
+			else
+				t2.joinNode(parent, parent.right);
+		}
+		this.root = VIRTUAL_LEAF;
+		PathAVLTree[] result = {t1, t2};
+		return result;
+	}
+
+	/**
+	 * public int join(int k, String i, PathAVLTree t)
+	 *
+	 * joins t and a new item with key k and info i with the tree, t is left empty.
+	 * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+	 * precondition: keys(t) < k < keys() or keys(t) > k > keys().
+	 */
+	public int join(int k, String i, PathAVLTree t) {
+		int res = Math.abs(this.getRank() - t.getRank()) + 1;
+		Node otherRoot = t.root;
+		t.root = VIRTUAL_LEAF;
+		joinNode(new Node(k, i, 0, 1), otherRoot);
+		return res;
+	}
+
+	/**
+	 * private void joinNode(Node x, Node otherRoot)
+	 *
+	 * joins the detached node x and the detached subtree rooted at otherRoot with the tree.
+	 */
+	private void joinNode(Node x, Node otherRoot) {
+		Node thisRoot = this.root;
+		Node leftRoot = otherRoot;
+		Node rightRoot = thisRoot;
+		if (otherRoot == VIRTUAL_LEAF ? x.key > thisRoot.key : otherRoot.key > x.key) {
+			leftRoot = thisRoot;
+			rightRoot = otherRoot;
+		}
+		int leftRank = leftRoot.height;
+		int rightRank = rightRoot.height;
+		if (Math.abs(leftRank - rightRank) <= 1) { // x becomes the root
+			link(x, leftRoot, rightRoot);
+			this.root = x;
+			return;
+		}
+		int depth = 0;
+		int added;
+		if (leftRank < rightRank) { // walk down the left spine of the right tree
+			Node c = rightRoot;
+			this.path[depth++] = c;
+			while (c.left.height > leftRank + 1) {
+				c = c.left;
+				this.path[depth++] = c;
+			}
+			link(x, leftRoot, c.left);
+			c.left = x;
+			added = leftRoot.size + 1;
+			this.root = rightRoot;
+		}
+		else { // walk down the right spine of the left tree
+			Node c = leftRoot;
+			this.path[depth++] = c;
+			while (c.right.height > rightRank + 1) {
+				c = c.right;
+				this.path[depth++] = c;
+			}
+			link(x, c.right, rightRoot);
+			c.right = x;
+			added = rightRoot.size + 1;
+			this.root = leftRoot;
+		}
+		for (int j = 0; j < depth; j++)
+			this.path[j].size += added;
+		rebalanceInsert(depth - 1);
+	}
+
+	/**
+	 * private static void link(Node x, Node l, Node r)
+	 *
+	 * sets l and r as the children of x, and fixes x's height and size.
+	 */
+	private static void link(Node x, Node l, Node r) {
+		x.left = l;
+		x.right = r;
+		x.height = Math.max(l.height, r.height) + 1;
+		x.size = l.size + r.size + 1;
+	}
+
+
+	/**
+	 * void checkInvariants()
+	 *
+	 * walks the whole tree and throws an IllegalStateException if it is broken: a key out of order,
+	 * a wrong size or height, a rank rule that doesn't hold or a changed virtual leaf.
+	 * Runs in O(n), for InvariantTester.
+	 */
+	void checkInvariants() {
+		if (VIRTUAL_LEAF.height != -1 || VIRTUAL_LEAF.size != 0)
+			throw new IllegalStateException("the virtual leaf was changed");
+		checkSubtree(this.root, null, null);
+	}
+
+	/**
+	 * private void checkSubtree(Node n, Node lo, Node hi)
+	 *
+	 * checks the subtree of n for checkInvariants, its keys must be between the keys of lo and hi (null for no bound).
+	 */
+	private void checkSubtree(Node n, Node lo, Node hi) {
+		if (n == VIRTUAL_LEAF)
+			return;
+		if ((lo != null && n.key <= lo.key) || (hi != null && n.key >= hi.key))
+			throw new IllegalStateException("key " + n.key + " is out of order");
+		checkSubtree(n.left, lo, n);
+		checkSubtree(n.right, n, hi);
+		if (n.size != n.left.size + n.right.size + 1)
+			throw new IllegalStateException("wrong size of " + n.key);
+		int leftDiff = n.height - n.left.height;
+		int rightDiff = n.height - n.right.height;
+		if (Math.min(leftDiff, rightDiff) != 1 || Math.max(leftDiff, rightDiff) > 2) // 1,1, 1,2 or 2,1
+			throw new IllegalStateException("the rank rule doesn't hold at " + n.key);
+	}
+
+
+	/**
+	 * private static class Node
+	 *
+	 * a node of the tree, without a parent reference.
+	 */
+	private static final class Node {
+		private int key;
+		private String info;
+		private Node left;
+		private Node right;
+		private int height;
+		private int size;
+
+		Node(int key, String info, int height, int size) {
+			this.key = key;
+			this.info = info;
+			this.left = VIRTUAL_LEAF; // null while creating the virtual leaf itself
+			this.right = VIRTUAL_LEAF;
+			this.height = height;
+			this.size = size;
+		}
+	}
+}